@@ -95,6 +95,38 @@ public class LuaClosure extends LuaFunction {
 	public final Prototype p;
 	public final UpValue[] upValues;
 	
+	/* DAN200 START */
+	/** 
+	 * Interface for a just-in-time compiler, which may replace hot prototypes with compiled 
+	 * implementations by setting {@link Prototype#compiled}. Compiled classes for prototypes with 
+	 * upvalues must implement {@link CompiledUpvalues}. 
+	 */
+	public interface Jit {
+		/** Called once a prototype has been run {@link #JIT_THRESHOLD} times. */
+		public void onHot( Prototype p );
+	}
+	
+	/**
+	 * Implemented by compiled prototypes with upvalues, so they can share the {@link UpValue}s of the 
+	 * closure they run for. These may still be open on the interpreter's stack, so compiled code must 
+	 * always go through them rather than copying their values.
+	 */
+	public interface CompiledUpvalues {
+		/** Called once, before the compiled function is first run */
+		public void initupvalues( UpValue[] upvalues );
+	}
+	
+	/** The just-in-time compiler, or null to always interpret */
+	public static Jit jit = null;
+	
+	/** How many calls and loop iterations a prototype may run before it is handed to the {@link #jit} */
+	public static int JIT_THRESHOLD = 1000;
+	
+	/** This closure's instance of {@link Prototype#compiled}, and the class it was created from */
+	private LuaFunction compiled;
+	private Class compiledClass;
+	/* DAN200 END */
+	
 	LuaClosure() {
 		p = null;
 		upValues = null;
@@ -177,7 +209,41 @@ public class LuaClosure extends LuaFunction {
 	}
 	
 	
+	/* DAN200 START */
+	/**
+	 * Run the compiled implementation of this closure's prototype instead of interpreting it. 
+	 */
+	private Varargs executeCompiled( Class c, LuaValue[] stack, Varargs varargs ) {
+		LuaFunction f = compiled;
+		if ( compiledClass != c ) {
+			try {
+				f = (LuaFunction) c.newInstance();
+				if ( p.nups > 0 )
+					((CompiledUpvalues) f).initupvalues( upValues );
+			} catch ( Exception e ) {
+				throw new LuaError(e);
+			}
+			compiled = f;
+			compiledClass = c;
+		}
+		if ( f.env != env )
+			f.env = env;
+		return f.invoke( p.numparams > 0? varargsOf(stack, 0, p.numparams, varargs): varargs );
+	}
+	/* DAN200 END */
+	
 	protected Varargs execute( LuaValue[] stack, Varargs varargs ) {
+		/* DAN200 START */
+		Jit jit = LuaClosure.jit;
+		if ( jit != null ) {
+			Class compiledClass = p.compiled;
+			if ( compiledClass != null )
+				return executeCompiled( compiledClass, stack, varargs );
+			if ( ++p.hotness == JIT_THRESHOLD )
+				jit.onHot( p );
+		}
+		/* DAN200 END */
+		
 		// loop through instructions
 		int i,a,b,c,pc=0,top=0;
 		LuaValue o;
@@ -198,7 +264,16 @@ public class LuaClosure extends LuaFunction {
 
 		// process instructions
 		LuaThread.CallStack cs = LuaThread.onCall( this ); 
+		/* DAN200 START */
+		LuaThread.Budget budget = cs.budget;
+		final int[] pcs = cs.pcs;
+		final int depth = cs.calls - 1;
+		/* DAN200 END */
 		try {
+			/* DAN200 START */
+			if ( budget != null )
+				budget.charge( 1 );
+			/* DAN200 END */
 			while ( true ) {
 				if (DebugLib.DEBUG_ENABLED) 
 					DebugLib.debugBytecode(pc, v, top);
@@ -314,7 +389,15 @@ public class LuaClosure extends LuaFunction {
 					continue;
 					
 				case Lua.OP_JMP: /*	sBx	pc+=sBx					*/
-					pc  += (i>>>14)-0x1ffff;
+					/* DAN200 START */
+					if ( (b = (i>>>14)-0x1ffff) < 0 ) {
+						if ( budget != null )
+							budget.charge( -b );
+						if ( jit != null && ++p.hotness == JIT_THRESHOLD )
+							jit.onHot( p );
+					}
+					pc += b;
+					/* DAN200 END */
 					continue;
 					
 				case Lua.OP_EQ: /*	A B C	if ((RK(B) == RK(C)) ~= A) then pc++		*/
@@ -346,6 +429,9 @@ public class LuaClosure extends LuaFunction {
 					continue;
 					
 				case Lua.OP_CALL: /*	A B C	R(A), ... ,R(A+C-2):= R(A)(R(A+1), ... ,R(A+B-1)) */
+					/* DAN200 START */
+					pcs[depth] = pc;
+					/* DAN200 END */
 					switch ( i & (Lua.MASK_B | Lua.MASK_C) ) {
 					case (1<<Lua.POS_B) | (0<<Lua.POS_C): v=stack[a].invoke(NONE); top=a+v.narg(); continue;
 					case (2<<Lua.POS_B) | (0<<Lua.POS_C): v=stack[a].invoke(stack[a+1]); top=a+v.narg(); continue;
@@ -407,6 +493,12 @@ public class LuaClosure extends LuaFunction {
 		                    stack[a] = idx;
 		                    stack[a + 3] = idx;
 		                    pc += (i>>>14)-0x1ffff;
+		                    /* DAN200 START */
+		                    if ( budget != null )
+		                    	budget.charge( 0x1ffff-(i>>>14) );
+		                    if ( jit != null && ++p.hotness == JIT_THRESHOLD )
+		                    	jit.onHot( p );
+		                    /* DAN200 END */
 			            }
 					}
 					continue;
@@ -429,6 +521,9 @@ public class LuaClosure extends LuaFunction {
 									 * else pc++
 									 */
 					// TODO: stack call on for loop body, such as:   stack[a].call(ci);
+					/* DAN200 START */
+					pcs[depth] = pc;
+					/* DAN200 END */
 					v = stack[a].invoke(varargsOf(stack[a+1],stack[a+2]));
 					if ( (o=v.arg1()).isnil() )
 						++pc;
@@ -499,9 +594,17 @@ public class LuaClosure extends LuaFunction {
 				}
 			}
 		} catch ( LuaError le ) {
+			/* DAN200 START */
+			le.onUnwind( cs, depth, p, pc );
+			/* DAN200 END */
 			throw le;
 		} catch ( Exception e ) {
-			throw new LuaError(e);
+			/* DAN200 START */
+			// throw new LuaError(e);
+			LuaError le = new LuaError(e);
+			le.onUnwind( cs, depth, p, pc );
+			throw le;
+			/* DAN200 END */
 		} finally {
 			cs.onReturn();
 			if ( openups != null )
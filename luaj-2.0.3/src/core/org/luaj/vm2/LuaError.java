@@ -39,6 +39,16 @@ public class LuaError extends RuntimeException {
 	private static final long serialVersionUID = 1L;
 	
 	private String traceback;
+	
+	/* DAN200 START */
+	/** The message, once any file and line info has been added */
+	private String message;
+	
+	/** Where the closure whose line is still to be added to the message is in the call stack, if any */
+	private LuaThread.CallStack pendingStack;
+	private int pendingIndex;
+	private LuaClosure pendingClosure;
+	/* DAN200 END */
 
 	/**
 	 *  Run the error hook if there is one
@@ -68,7 +78,11 @@ public class LuaError extends RuntimeException {
 	 * @param cause the Throwable that caused the error, if known.  
 	 */
 	public LuaError(Throwable cause) {
-		super( errorHook( addFileLine( "vm error: "+cause ) ) );
+		/* DAN200 START */
+		// super( errorHook( addFileLine( "vm error: "+cause ) ) );
+		super( "vm error: "+cause );
+		setMessage( "vm error: "+cause, -1 );
+		/* DAN200 END */
 		this.cause = cause;
 		this.traceback = DebugLib.traceback(1);
 	}
@@ -79,7 +93,11 @@ public class LuaError extends RuntimeException {
 	 * @param message message to supply
 	 */
 	public LuaError(String message) {
-		super( errorHook( addFileLine( message ) ) );
+		/* DAN200 START */
+		// super( errorHook( addFileLine( message ) ) );
+		super( message );
+		setMessage( message, -1 );
+		/* DAN200 END */
 		this.traceback = DebugLib.traceback(1);
 	}		
 
@@ -89,7 +107,11 @@ public class LuaError extends RuntimeException {
 	 * @param level where to supply line info from in call stack
 	 */
 	public LuaError(String message, int level) {
-		super( errorHook( addFileLine( message, level ) ) );
+		/* DAN200 START */
+		// super( errorHook( addFileLine( message, level ) ) );
+		super( message );
+		setMessage( message, level );
+		/* DAN200 END */
 		this.traceback = DebugLib.traceback(1);
 	}	
 
@@ -114,6 +136,82 @@ public class LuaError extends RuntimeException {
 		return fileline!=null? fileline+": "+message: message;		
 	}
 	
+	/* DAN200 START */
+	/**
+	 * Set the message, adding file and line info for a level of the call stack, or for the nearest 
+	 * enclosing closure if the level is negative.
+	 * <p>
+	 * Without {@link DebugLib} only a closure knows which instruction it is running, so if the level 
+	 * is a closure the message is left pending, and the closure adds its line as the error passes 
+	 * through it. See {@link #onUnwind}.
+	 */
+	private void setMessage( String message, int level ) {
+		if ( message == null || level == 0 || DebugLib.DEBUG_ENABLED ) {
+			this.message = errorHook( level < 0? addFileLine( message ): addFileLine( message, level ) );
+			return;
+		}
+		
+		LuaThread.CallStack cs = LuaThread.getRunning().callstack;
+		int index = cs.calls - level;
+		if ( level < 0 ) {
+			index = cs.calls - 1;
+			for ( int i=index; i>=0; --i ) {
+				if ( cs.functions[i] instanceof LuaClosure ) {
+					index = i;
+					break;
+				}
+			}
+		}
+		
+		if ( index < 0 || index >= cs.calls ) {
+			this.message = errorHook( message );
+		} else if ( !(cs.functions[index] instanceof LuaClosure) ) {
+			this.message = errorHook( cs.functions[index].tojstring()+": "+message );
+		} else {
+			this.message = message;
+			this.pendingStack = cs;
+			this.pendingIndex = index;
+			this.pendingClosure = (LuaClosure) cs.functions[index];
+		}
+	}
+	
+	/**
+	 * Called by a closure as this error passes through it, adding the closure's line to the message if 
+	 * that is still pending for it.
+	 * @param cs the call stack the closure is running on
+	 * @param index the index of the closure in the call stack
+	 * @param p the closure's prototype
+	 * @param pc the closure's pc, which is one past the instruction it is running
+	 */
+	void onUnwind( LuaThread.CallStack cs, int index, Prototype p, int pc ) {
+		if ( pendingStack == cs && pendingIndex == index ) {
+			pendingStack = null;
+			pendingClosure = null;
+			message = errorHook( sourceline( p, pc-1 )+": "+message );
+		}
+	}
+	
+	/**
+	 * Get the message, with file and line info. If the error was caught before passing back through the 
+	 * closure it points at, that closure must be waiting on a call, so the line of that call is used.
+	 */
+	public String getMessage() {
+		LuaThread.CallStack cs = pendingStack;
+		if ( cs != null ) {
+			LuaClosure closure = pendingClosure;
+			int index = pendingIndex;
+			onUnwind( cs, index, closure.p, index < cs.calls && cs.functions[index] == closure? cs.pcs[index]: 0 );
+		}
+		return message;
+	}
+	
+	private static String sourceline( Prototype p, int pc ) {
+		String s = p.source.tojstring();
+		int line = p.lineinfo==null || pc<0 || pc>=p.lineinfo.length? -1: p.lineinfo[pc];
+		return (s.startsWith("@")||s.startsWith("=")? s.substring(1): s) + ":" + line;
+	}
+	/* DAN200 END */
+	
 	/** Print the message and stack trace */
 	public void printStackTrace() {
 		System.out.println( toString() );
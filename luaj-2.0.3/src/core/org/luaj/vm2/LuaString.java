@@ -73,6 +73,13 @@ public class LuaString extends LuaValue {
 	/** The number of bytes that comprise this string */
 	public final int    m_length;
 
+	/* DAN200 START */
+	/** The hash code, or 0 if it has not been worked out yet. Strings are used as table keys far more often than they are made. */
+	private int m_hashcode;
+	/* DAN200 END */
+
+	/* DAN200 START */
+	/*
 	private static final Hashtable index_java = new Hashtable();
 
 	private final static LuaString index_get(Hashtable indextable, Object key) {
@@ -83,6 +90,31 @@ public class LuaString extends LuaValue {
 	private final static void index_set(Hashtable indextable, Object key, LuaString value) {
 		indextable.put(key, new WeakReference(value));
 	}
+	*/
+
+	/** Number of recently converted Java strings to remember, a power of two */
+	private static final int INTERN_SIZE = 1024;
+
+	/** Longest Java string to remember. Longer strings are rarely repeated, and cost as much to look up as to convert. */
+	private static final int INTERN_MAX_LENGTH = 64;
+
+	private static final class Interned {
+		final String key;
+		final LuaString value;
+
+		Interned(String key, LuaString value) {
+			this.key = key;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * Recently converted Java strings, indexed by hash, with a newer string replacing an older one in the same slot.
+	 * This is shared by every thread without locking: entries are immutable, so a racing write just means one of the
+	 * two strings isn't remembered.
+	 */
+	private static final Interned[] interned = new Interned[INTERN_SIZE];
+	/* DAN200 END */
 
 	/**
 	 * Get a {@link LuaString} instance whose bytes match 
@@ -91,23 +123,36 @@ public class LuaString extends LuaValue {
 	 * @return {@link LuaString} with UTF8 bytes corresponding to the supplied String
 	 */
 	public static LuaString valueOf(String string) {
+		/* DAN200 START */
+		/*
 		LuaString s = index_get( index_java, string );
 		if ( s != null ) return s;
 		char[] c = string.toCharArray();
-        /* DAN200 START */
+		*/
+		int length = string.length();
+		int slot = 0;
+		if ( length <= INTERN_MAX_LENGTH ) {
+			int h = string.hashCode();
+			slot = (h ^ (h >>> 16)) & (INTERN_SIZE - 1);
+			Interned entry = interned[slot];
+			if ( entry != null && entry.key.equals(string) ) return entry.value;
+		}
         /*
 		byte[] b = new byte[lengthAsUtf8(c)];
 		encodeToUtf8(c, b, 0);
 		*/
-        byte[] b = new byte[c.length];
+        byte[] b = new byte[length];
         for( int i=0; i<b.length; ++i )
         {
-            char ch = c[i];
+            char ch = string.charAt(i);
             b[i] = (ch < 256) ? (byte)ch : (byte)'?';
         }
         /* DAN200 END */
-		s = valueOf(b, 0, b.length);
-		index_set( index_java, string, s );
+		LuaString s = valueOf(b, 0, b.length);
+		/* DAN200 START */
+		// index_set( index_java, string, s );
+		if ( length <= INTERN_MAX_LENGTH ) interned[slot] = new Interned(string, s);
+		/* DAN200 END */
 		return s;
 	}
 
@@ -377,10 +422,17 @@ public class LuaString extends LuaValue {
 	}
 	
 	public int hashCode() {
-		int h = m_length;  /* seed */
+		/* DAN200 START */
+		int h = m_hashcode;
+		if ( h != 0 ) return h;
+		h = m_length;  /* seed */
+		/* DAN200 END */
 		int step = (m_length>>5)+1;  /* if string is too long, don't hash all its chars */
 		for (int l1=m_length; l1>=step; l1-=step)  /* compute hash */
 		    h = h ^ ((h<<5)+(h>>2)+(((int) m_bytes[m_offset+l1-1] ) & 0x0FF ));
+		/* DAN200 START */
+		m_hashcode = h;
+		/* DAN200 END */
 		return h;
 	}
 	
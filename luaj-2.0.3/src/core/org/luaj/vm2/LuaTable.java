@@ -75,6 +75,21 @@ public class LuaTable extends LuaValue {
 	
 	/** the array values */
 	protected LuaValue[] array;
+
+	/* DAN200 START */
+	/** 
+	 * The array values while every one of them is a number, or null. When this is in use, 
+	 * {@link #array} is null. Large lists of numbers (heightmaps, image buffers...) then take 
+	 * 8 bytes an element rather than a reference and a boxed number each.
+	 */
+	private double[] numbers;
+
+	/** Marks an empty slot in {@link #numbers}. A NaN which arithmetic does not produce. */
+	private static final long EMPTY_NUMBER = 0x7ff80000deadbeefL;
+
+	/** The smallest array part to consider storing as numbers */
+	private static final int MIN_NUMBERS = 16;
+	/* DAN200 END */
 	
 	/** the hash keys */
 	protected LuaValue[] hashKeys;
@@ -84,6 +99,11 @@ public class LuaTable extends LuaValue {
 	
 	/** the number of hash entries */
 	protected int hashEntries;
+
+	/* DAN200 START */
+	/** the number of hash slots which are not empty, including the tombstones of removed keys */
+	private int hashUsed;
+	/* DAN200 END */
 	
 	/** metatable for this table, or null */
 	protected LuaValue m_metatable;
@@ -168,17 +188,34 @@ public class LuaTable extends LuaValue {
 	}
 	
 	public void presize( int narray ) {
-		if ( narray > array.length )
-			array = resize( array, narray );
+		/* DAN200 START */
+		// if ( narray > array.length )
+		// 	array = resize( array, narray );
+		if ( narray > getArrayLength() ) {
+			if ( numbers != null )
+				numbers = resize( numbers, narray );
+			else
+				array = resize( array, narray );
+		}
+		/* DAN200 END */
 	}
 
 	public void presize(int narray, int nhash) {
-		if ( nhash > 0 && nhash < MIN_HASH_CAPACITY )
-			nhash = MIN_HASH_CAPACITY;
+		/* DAN200 START */
+		// nhash is the number of entries expected, which is rounded up to a power of two with room to spare.
+		if ( nhash > 0 )
+			nhash = hashCapacity( nhash );
+		/* DAN200 END */
 		array = (narray>0? new LuaValue[narray]: NOVALS);
+		/* DAN200 START */
+		numbers = null;
+		/* DAN200 END */
 		hashKeys = (nhash>0? new LuaValue[nhash]: NOVALS);
 		hashValues = (nhash>0? new LuaValue[nhash]: NOVALS);
 		hashEntries = 0;
+		/* DAN200 START */
+		hashUsed = 0;
+		/* DAN200 END */
 	}
 
 	/** Resize the table */
@@ -187,13 +224,90 @@ public class LuaTable extends LuaValue {
 		System.arraycopy(old, 0, v, 0, old.length);
 		return v;
 	}
+
+	/* DAN200 START */
+	private static double[] resize( double[] old, int n ) {
+		double[] v = new double[n];
+		System.arraycopy(old, 0, v, 0, old.length);
+		java.util.Arrays.fill(v, old.length, n, Double.longBitsToDouble(EMPTY_NUMBER));
+		return v;
+	}
+
+	/**
+	 * Get an element of the array part
+	 * @param i zero-based index, which must be within the array part
+	 * @return the value, or null if there is none
+	 */
+	private LuaValue arrayget( int i ) {
+		if ( numbers == null )
+			return array[i];
+		double d = numbers[i];
+		return Double.doubleToRawLongBits(d) == EMPTY_NUMBER? null: LuaDouble.valueOf(d);
+	}
+
+	/**
+	 * Set an element of the array part, going back to an array of values if it is not a number
+	 * @param i zero-based index, which must be within the array part
+	 * @param value the value, or null to clear it
+	 */
+	private void arrayput( int i, LuaValue value ) {
+		if ( numbers != null ) {
+			if ( value == null ) {
+				numbers[i] = Double.longBitsToDouble(EMPTY_NUMBER);
+				return;
+			}
+			if ( value instanceof LuaNumber ) {
+				double d = value.todouble();
+				if ( Double.doubleToRawLongBits(d) != EMPTY_NUMBER ) {
+					numbers[i] = d;
+					return;
+				}
+			}
+			unspecialize();
+		}
+		array[i] = value;
+	}
+
+	/** 
+	 * Store the array part as numbers, if it is large enough and all its values are numbers. Weak 
+	 * tables keep their values as they are, as they may hold {@link WeakTable.WeakValue} wrappers.
+	 */
+	private void specialize() {
+		final LuaValue[] a = array;
+		if ( a.length < MIN_NUMBERS || this instanceof WeakTable )
+			return;
+		for ( int i=0; i<a.length; i++ ) {
+			final LuaValue v = a[i];
+			if ( v != null && ( !(v instanceof LuaNumber) || Double.doubleToRawLongBits(v.todouble()) == EMPTY_NUMBER ) )
+				return;
+		}
+		final double[] d = new double[a.length];
+		for ( int i=0; i<a.length; i++ )
+			d[i] = a[i] != null? a[i].todouble(): Double.longBitsToDouble(EMPTY_NUMBER);
+		numbers = d;
+		array = null;
+	}
+
+	/** Go back to storing the array part as values */
+	private void unspecialize() {
+		final double[] d = numbers;
+		final LuaValue[] a = new LuaValue[d.length];
+		for ( int i=0; i<d.length; i++ )
+			a[i] = Double.doubleToRawLongBits(d[i]) == EMPTY_NUMBER? null: LuaDouble.valueOf(d[i]);
+		array = a;
+		numbers = null;
+	}
+	/* DAN200 END */
 	
 	/** 
 	 * Get the length of the array part of the table. 
 	 * @return length of the array part, does not relate to count of objects in the table. 
 	 */
 	protected int getArrayLength() {
-		return array.length;
+		/* DAN200 START */
+		// return array.length;
+		return numbers != null? numbers.length: array.length;
+		/* DAN200 END */
 	}
 
 	/** 
@@ -243,16 +357,28 @@ public class LuaTable extends LuaValue {
 	}
 
 	public LuaValue rawget( int key ) {
-		if ( key>0 && key<=array.length ) 
-			return array[key-1]!=null? array[key-1]: NIL;
+		/* DAN200 START */
+		// if ( key>0 && key<=array.length ) 
+		// 	return array[key-1]!=null? array[key-1]: NIL;
+		if ( key>0 && key<=getArrayLength() ) {
+			LuaValue v = arrayget(key-1);
+			return v!=null? v: NIL;
+		}
+		/* DAN200 END */
 		return hashget( LuaInteger.valueOf(key) );
 	}
 	
 	public LuaValue rawget( LuaValue key ) {
 		if ( key.isinttype() ) {
 			int ikey = key.toint();
-			if ( ikey>0 && ikey<=array.length ) 
-				return array[ikey-1]!=null? array[ikey-1]: NIL;
+			/* DAN200 START */
+			// if ( ikey>0 && ikey<=array.length ) 
+			// 	return array[ikey-1]!=null? array[ikey-1]: NIL;
+			if ( ikey>0 && ikey<=getArrayLength() ) {
+				LuaValue v = arrayget(ikey-1);
+				return v!=null? v: NIL;
+			}
+			/* DAN200 END */
 		}
 		return hashget( key );
 	}
@@ -290,6 +416,8 @@ public class LuaTable extends LuaValue {
 
 	/** Set an array element */
 	private boolean arrayset( int key, LuaValue value ) {
+		/* DAN200 START */
+		/*
 		if ( key>0 && key<=array.length ) {
 			array[key-1] = (value.isnil()? null: value);
 			return true;
@@ -298,22 +426,51 @@ public class LuaTable extends LuaValue {
 			array[key-1] = value;
 			return true;
 		}
+		*/
+		int n = getArrayLength();
+		if ( key>0 && key<=n ) {
+			arrayput(key-1, value.isnil()? null: value);
+			return true;
+		} else if ( key==n+1 && !value.isnil() ) {
+			expandarray();
+			arrayput(key-1, value);
+			return true;
+		}
+		/* DAN200 END */
 		return false;
 	}
 
 	/** Expand the array part */
 	private void expandarray() {
+		/* DAN200 START */
+		/*
 		int n = array.length;
 		int m = Math.max(2,n*2);
 		array = resize(array, m);
+		*/
+		int n = getArrayLength();
+		int m = Math.max(2,n*2);
+		if ( numbers != null )
+			numbers = resize(numbers, m);
+		else
+			array = resize(array, m);
+		/* DAN200 END */
 		for ( int i=n; i<m; i++ ) {
 			LuaValue k = LuaInteger.valueOf(i+1);
 			LuaValue v = hashget(k);
 			if ( !v.isnil() ) {
 				hashset(k, NIL);
-				array[i] = v;
+				/* DAN200 START */
+				// array[i] = v;
+				arrayput(i, v);
+				/* DAN200 END */
 			}
 		}
+		/* DAN200 START */
+		// Growing copies the array part anyway, so this is a cheap time to look at what it holds.
+		if ( numbers == null )
+			specialize();
+		/* DAN200 END */
 	}
 
 	/** Remove the element at a position in a list-table
@@ -405,12 +562,19 @@ public class LuaTable extends LuaValue {
 	 */
 	public int maxn() {
 		int n = 0;
-		for ( int i=0; i<array.length; i++ )
-			if ( array[i] != null )
+		/* DAN200 START */
+		// for ( int i=0; i<array.length; i++ )
+		// 	if ( array[i] != null )
+		for ( int i=0, a=getArrayLength(); i<a; i++ )
+			if ( arrayget(i) != null )
+		/* DAN200 END */
 				n = i+1;
 		for ( int i=0; i<hashKeys.length; i++ ) {
 			LuaValue v = hashKeys[i];
-			if ( v!=null && v.isinttype() ) {
+			/* DAN200 START */
+			// if ( v!=null && v.isinttype() ) {
+			if ( v!=null && hashValues[i]!=null && v.isinttype() ) {
+			/* DAN200 END */
 				int key = v.toint();
 				if ( key > n )
 					n = key;
@@ -430,29 +594,50 @@ public class LuaTable extends LuaValue {
 			if ( ! key.isnil() ) {
 				if ( key.isinttype() ) { 
 					i = key.toint();
-					if ( i>0 && i<=array.length ) {
-						if ( array[i-1] == null )
-							error( "invalid key to 'next'" );
+					if ( i>0 && i<=getArrayLength() ) {
+						/* DAN200 START */
+						// Lua lets a traversal clear the field it's on, so the slot may be empty by now.
+						// if ( array[i-1] == null )
+						// 	error( "invalid key to 'next'" );
+						/* DAN200 END */
 						break;
 					}
 				}
 				if ( hashKeys.length == 0 )
 					error( "invalid key to 'next'" );
-				i = hashFindSlot(key);
-				if ( hashKeys[i] == null )
+				/* DAN200 START */
+				// i = hashFindSlot(key);
+				// if ( hashKeys[i] == null )
+				// 	error( "invalid key to 'next'" );
+				i = hashNextSlot(key);
+				if ( i < 0 )
 					error( "invalid key to 'next'" );
-				i += 1+array.length;
+				/* DAN200 END */
+				i += 1+getArrayLength();
 			}
 		} while ( false );
 		
 		// check array part
+		/* DAN200 START */
+		/*
 		for ( ; i<array.length; ++i )
 			if ( array[i] != null )
 				return varargsOf(LuaInteger.valueOf(i+1),array[i]);
+		*/
+		final int a = getArrayLength();
+		for ( ; i<a; ++i ) {
+			LuaValue v = arrayget(i);
+			if ( v != null )
+				return varargsOf(LuaInteger.valueOf(i+1),v);
+		}
+		/* DAN200 END */
 
 		// check hash part
-		for ( i-=array.length; i<hashKeys.length; ++i )
-			if ( hashKeys[i] != null )
+		for ( i-=a; i<hashKeys.length; ++i )
+			/* DAN200 START */
+			// if ( hashKeys[i] != null )
+			if ( hashValues[i] != null )
+			/* DAN200 END */
 				return varargsOf(hashKeys[i],hashValues[i]);
 		
 		// nothing found, push nil, return nil.
@@ -500,6 +685,35 @@ public class LuaTable extends LuaValue {
 	}
 	
 
+	/* DAN200 START */
+	// The hash part has a power of two capacity, so that slots can be found with a mask rather than 
+	// a division, and uses linear probing. Removing a key replaces it with a tombstone rather than 
+	// shifting the keys after it back. Like the dead keys of C Lua, a tombstone keeps only the hash 
+	// of its key, which lets next() carry on from a key cleared during a traversal without the 
+	// table holding on to the key itself. Tombstones are reused by later insertions, and dropped 
+	// when the table is rehashed.
+
+	/** Marks a slot whose key has been removed */
+	private static final class Tombstone extends LuaValue {
+		private final int hash;
+		
+		private Tombstone( int hash ) {
+			this.hash = hash;
+		}
+		
+		public int type() {
+			return TNONE;
+		}
+		
+		public String typename() {
+			return "tombstone";
+		}
+		
+		public int hashCode() {
+			return hash;
+		}
+	}
+
 	/**
 	 * Set a hashtable value
 	 * @param key key to set
@@ -514,11 +728,15 @@ public class LuaTable extends LuaValue {
 				hashValues = new LuaValue[ MIN_HASH_CAPACITY ];
 			}
 			int slot = hashFindSlot( key );
-			if ( hashFillSlot( slot, value ) )
+			if ( hashValues[slot] != null ) {
+				hashValues[slot] = value;
 				return;
+			}
+			final LuaValue old = hashKeys[slot];
 			hashKeys[slot] = key;
 			hashValues[slot] = value;
-			if ( checkLoadFactor() )
+			++hashEntries;
+			if ( old == null && ++hashUsed >= hashLimit() )
 				rehash();
 		}
 	}
@@ -526,30 +744,63 @@ public class LuaTable extends LuaValue {
 	/** 
 	 * Find the hashtable slot to use
 	 * @param key key to look for
-	 * @return slot to use
+	 * @return slot holding the key, or the tombstone or empty slot to put it in
 	 */
 	public int hashFindSlot(LuaValue key) {		
-		int i = ( key.hashCode() & 0x7FFFFFFF ) % hashKeys.length;
+		final int mask = hashKeys.length - 1;
+		int i = hashSlot( key.hashCode(), mask );
 		
 		// This loop is guaranteed to terminate as long as we never allow the
 		// table to get 100% full.
+		int free = -1;
 		LuaValue k;
-		while ( ( k = hashKeys[i] ) != null && !k.raweq(key) ) {
-			i = ( i + 1 ) % hashKeys.length;
+		while ( ( k = hashKeys[i] ) != null ) {
+			if ( k.raweq(key) )
+				return i;
+			if ( free < 0 && k instanceof Tombstone )
+				free = i;
+			i = ( i + 1 ) & mask;
 		}
-		return i;
+		return free >= 0? free: i;
 	}
-
-	private boolean hashFillSlot( int slot, LuaValue value ) {
-		hashValues[ slot ] = value;
-		if ( hashKeys[ slot ] != null ) {
-			return true;
-		} else {
-			++hashEntries;
-			return false;
+	
+	/**
+	 * Find the slot next() should carry on from
+	 * @param key the key next() was given
+	 * @return slot holding the key, or the tombstone it left if it was removed, or -1 if it was never in the table
+	 */
+	private int hashNextSlot(LuaValue key) {
+		final int mask = hashKeys.length - 1;
+		final int hash = key.hashCode();
+		int i = hashSlot( hash, mask );
+		
+		// Keys which were removed and set again may have moved to an earlier slot, so only fall back 
+		// on a tombstone once we know the key isn't live.
+		int dead = -1;
+		LuaValue k;
+		while ( ( k = hashKeys[i] ) != null ) {
+			if ( k instanceof Tombstone ) {
+				if ( dead < 0 && k.hashCode() == hash )
+					dead = i;
+			} else if ( k.raweq(key) ) {
+				return i;
+			}
+			i = ( i + 1 ) & mask;
 		}
+		return dead;
 	}
-	
+
+	/**
+	 * Get the first slot to look in for a hash code
+	 * @param hash the key's hash code
+	 * @param mask the capacity of the hash part, less one
+	 * @return slot index
+	 */
+	protected static int hashSlot( int hash, int mask ) {
+		// Fold the high bits in, as the mask only keeps the low ones.
+		return ( hash ^ ( hash >>> 16 ) ) & mask;
+	}
+
 	private void hashRemove( LuaValue key ) {
 		if ( hashKeys.length > 0 ) {
 			int slot = hashFindSlot( key );
@@ -558,62 +809,59 @@ public class LuaTable extends LuaValue {
 	}
 	
 	/**
-	 * Clear a particular slot in the table
+	 * Clear a particular slot in the table, replacing its key with a tombstone
 	 * @param i slot to clear.
 	 */
 	protected void hashClearSlot( int i ) {
-		if ( hashKeys[ i ] != null ) {
-			
-			int j = i;
-			int n = hashKeys.length; 
-			while ( hashKeys[ j = ( ( j + 1 ) % n ) ] != null ) {
-				final int k = ( ( hashKeys[ j ].hashCode() )& 0x7FFFFFFF ) % n;
-				if ( ( j > i && ( k <= i || k > j ) ) ||
-					 ( j < i && ( k <= i && k > j ) ) ) {
-					hashKeys[ i ] = hashKeys[ j ];
-					hashValues[ i ] = hashValues[ j ];
-					i = j;
-				}
-			}
-			
+		if ( hashValues[ i ] != null ) {
 			--hashEntries;
-			hashKeys[ i ] = null;
 			hashValues[ i ] = null;
-			
-			if ( hashEntries == 0 ) {
-				hashKeys = NOVALS;
-				hashValues = NOVALS;
-			}
+			hashKeys[ i ] = new Tombstone( hashKeys[ i ].hashCode() );
 		}
 	}
 
-	private boolean checkLoadFactor() {
-		// Using a load factor of (n+1) >= 7/8 because that is easy to compute without
-		// overflow or division.
+	private int hashLimit() {
+		// Keep at least a quarter of the slots empty, so probe sequences stay short.
 		final int hashCapacity = hashKeys.length;
-		return hashEntries >= (hashCapacity - (hashCapacity>>3));
+		return hashCapacity - (hashCapacity>>2);
+	}
+
+	/**
+	 * Get the hash capacity to use for a number of entries
+	 * @param entries the number of live entries
+	 * @return power of two capacity which is under the load factor
+	 */
+	private static int hashCapacity( int entries ) {
+		int capacity = MIN_HASH_CAPACITY;
+		while ( entries >= capacity - (capacity>>2) )
+			capacity <<= 1;
+		return capacity;
 	}
 
 	private void rehash() {
 		final int oldCapacity = hashKeys.length;
-		final int newCapacity = oldCapacity+(oldCapacity>>2)+MIN_HASH_CAPACITY;
+		final int newCapacity = hashCapacity( hashEntries );
 		
 		final LuaValue[] oldKeys = hashKeys;
 		final LuaValue[] oldValues = hashValues;
 		
 		hashKeys = new LuaValue[ newCapacity ];
 		hashValues = new LuaValue[ newCapacity ];
+		hashUsed = 0;
 		
 		for ( int i = 0; i < oldCapacity; ++i ) {
-			final LuaValue k = oldKeys[i];
-			if ( k != null ) {
-				final LuaValue v = oldValues[i];
+			final LuaValue v = oldValues[i];
+			if ( v != null ) {
+				final LuaValue k = oldKeys[i];
 				final int slot = hashFindSlot( k );
 				hashKeys[slot] = k;
 				hashValues[slot] = v;
+				++hashUsed;
 			}
 		}
+		hashEntries = hashUsed;
 	}
+	/* DAN200 END */
 	
 	// ----------------- sort support -----------------------------
 	//
@@ -625,8 +873,12 @@ public class LuaTable extends LuaValue {
 	 * @param comparator {@link LuaValue} to be called to compare elements.
 	 */
 	public void sort(LuaValue comparator) {
-		int n = array.length;
-		while ( n > 0 && array[n-1] == null )
+		/* DAN200 START */
+		// int n = array.length;
+		// while ( n > 0 && array[n-1] == null )
+		int n = getArrayLength();
+		while ( n > 0 && arrayget(n-1) == null )
+		/* DAN200 END */
 			--n;
 		if ( n > 1 ) 
 			heapSort(n, comparator);
@@ -659,8 +911,18 @@ public class LuaTable extends LuaValue {
 	}
 
 	private boolean compare(int i, int j, LuaValue cmpfunc) {
-		LuaValue a = array[i];
-		LuaValue b = array[j];
+		/* DAN200 START */
+		// LuaValue a = array[i];
+		// LuaValue b = array[j];
+		if ( numbers != null && cmpfunc.isnil() ) {
+			double a = numbers[i], b = numbers[j];
+			if ( Double.doubleToRawLongBits(a) == EMPTY_NUMBER || Double.doubleToRawLongBits(b) == EMPTY_NUMBER )
+				return false;
+			return a < b;
+		}
+		LuaValue a = arrayget(i);
+		LuaValue b = arrayget(j);
+		/* DAN200 END */
 		if ( a == null || b == null )
 			return false;
 		if ( ! cmpfunc.isnil() ) {
@@ -671,6 +933,15 @@ public class LuaTable extends LuaValue {
 	}
 	
 	private void swap(int i, int j) {
+		/* DAN200 START */
+		// The comparator may have stored something else in the table, so check the mode every time.
+		if ( numbers != null ) {
+			double d = numbers[i];
+			numbers[i] = numbers[j];
+			numbers[j] = d;
+			return;
+		}
+		/* DAN200 END */
 		LuaValue a = array[i];
 		array[i] = array[j];
 		array[j] = a;
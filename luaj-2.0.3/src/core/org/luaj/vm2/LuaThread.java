@@ -97,10 +97,79 @@ public class LuaThread extends LuaValue {
 	
 	public static final int        MAX_CALLSTACK = 256;
 	
-	private static final LuaThread main_thread = new LuaThread();
+	/* DAN200 START */
+	//private static final LuaThread main_thread = new LuaThread();
 	
 	// state of running thread including call stack
-	private static LuaThread       running_thread    = main_thread;
+	//private static LuaThread       running_thread    = main_thread;
+
+	/** Main thread for each java thread which runs lua code outside of a coroutine. */
+	private static final ThreadLocal main_threads = new ThreadLocal() {
+		protected Object initialValue() {
+			return new LuaThread();
+		}
+	};
+
+	/** State of the coroutine whose body is being run by each java thread, if any. */
+	private static final ThreadLocal coroutine_states = new ThreadLocal();
+
+	/**
+	 * Provides the java threads on which coroutine bodies are run.
+	 * <p>
+	 * Each coroutine needs a java thread of its own for as long as it is alive,
+	 * as its call stack is the stack of that thread. The executor must start
+	 * running the body straight away, and must not run it on the calling thread.
+	 * @see #executor
+	 */
+	public interface CoroutineExecutor {
+
+		/** Start running the body of a coroutine on another java thread.
+		 * @param body the coroutine body, which returns once the coroutine is dead
+		 */
+		public void execute(Runnable body);
+	}
+
+	/** Executor used to run coroutines, or null to start a new java thread for each one. */
+	public static CoroutineExecutor executor = null;
+
+	/**
+	 * Returned by {@link #resume(Varargs)} from the main thread when the coroutine was paused 
+	 * rather than yielding.
+	 * @see #pause()
+	 */
+	public static final Varargs PAUSED = new LuaUserdata("paused");
+
+	/**
+	 * A cheap alternative to a debug count hook, used to stop lua code from running forever.
+	 * <p>
+	 * The interpreter charges a budget once per call and once per loop iteration, by the 
+	 * number of instructions in the loop, and compiled code does the same through 
+	 * {@link LuaThread#countInstructions(int)}. Once it runs out {@link #exhausted()} is 
+	 * called, which may refill it, yield or throw an error.
+	 * <p>
+	 * A budget is shared by a thread and every coroutine created from it, so one budget 
+	 * covers a whole lua machine. As only one of these threads runs at a time, the 
+	 * budget itself needs no synchronization.
+	 * @see LuaThread#setBudget(Budget)
+	 */
+	public static abstract class Budget {
+		/** The number of instructions which may run before {@link #exhausted()} is called */
+		public int remaining;
+
+		protected Budget(int remaining) {
+			this.remaining = remaining;
+		}
+
+		/** Charge the budget for running some instructions */
+		public final void charge(int count) {
+			if ( (remaining -= count) <= 0 )
+				exhausted();
+		}
+
+		/** Called on the lua thread once the budget has run out. */
+		protected abstract void exhausted();
+	}
+	/* DAN200 END */
 
 	/** Interval to check for LuaThread dereferencing.  */
 	public static int GC_INTERVAL = 30000;
@@ -127,6 +196,9 @@ public class LuaThread extends LuaValue {
 		LuaValue.assert_(func != null, "function cannot be null");
 		this.env = env;
 		state = new State(this, func);
+		/* DAN200 START */
+		callstack.budget = getRunning().callstack.budget;
+		/* DAN200 END */
 	}
 	
 	public int type() {
@@ -170,7 +242,15 @@ public class LuaThread extends LuaValue {
 	 * @return {@link LuaThread} that is currenly running
 	 */
 	public static LuaThread getRunning() {
-		return running_thread;
+		/* DAN200 START */
+		// Each coroutine has its own java thread, so the running lua thread is always
+		// the one bound to the current java thread. This allows several lua machines to
+		// be run on separate java threads at once.
+		State s = (State) coroutine_states.get();
+		if (s != null && s.running != null)
+			return s.running;
+		return (LuaThread) main_threads.get();
+		/* DAN200 END */
 	}
 	
 	/**
@@ -178,7 +258,10 @@ public class LuaThread extends LuaValue {
 	 * @return true if this is the main thread
 	 */
 	public static boolean isMainThread(LuaThread r) {		
-		return r == main_thread;
+		/* DAN200 START */
+		//return r == main_thread;
+		return r.state.function == null;
+		/* DAN200 END */
 	}
 	
 	/** 
@@ -188,14 +271,14 @@ public class LuaThread extends LuaValue {
 	 * @param globals The global variables for the main ghread. 
 	 */
 	public static void setGlobals(LuaValue globals) {
-		running_thread.env = globals;
+		getRunning().env = globals;
 	}
 	
 	/** Get the current thread's environment 
 	 * @return {@link LuaValue} containing the global variables of the current thread.
 	 */
 	public static LuaValue getGlobals() {
-		LuaValue e = running_thread.env;
+		LuaValue e = getRunning().env;
 		return e!=null? e: LuaValue.error("LuaThread.setGlobals() not initialized");
 	}
 
@@ -206,7 +289,7 @@ public class LuaThread extends LuaValue {
 	 * @see DebugLib
 	 */
 	public static final CallStack onCall(LuaFunction function) {
-		CallStack cs = running_thread.callstack;
+		CallStack cs = getRunning().callstack;
 		cs.onCall(function);
 		return cs;
 	}
@@ -217,7 +300,7 @@ public class LuaThread extends LuaValue {
 	 * @return LuaFunction on the call stack, or null if outside of range of active stack
 	 */
 	public static final LuaFunction getCallstackFunction(int level) {
-		return running_thread.callstack.getFunction(level);
+		return getRunning().callstack.getFunction(level);
 	}
 
 	/**
@@ -226,8 +309,9 @@ public class LuaThread extends LuaValue {
 	 * @return the previous error function.
 	 */
 	public static LuaValue setErrorFunc(LuaValue errfunc) {
-		LuaValue prev = running_thread.err;
-		running_thread.err = errfunc;
+		LuaThread running = getRunning();
+		LuaValue prev = running.err;
+		running.err = errfunc;
 		return prev;
 	}
 
@@ -237,7 +321,7 @@ public class LuaThread extends LuaValue {
 	 * @return {@link Varargs} provided as arguments to {@link #resume(Varargs)}
 	 */
 	public static Varargs yield(Varargs args) {
-		State s = running_thread.state;
+		State s = getRunning().state;
 		if (s.function == null)
 			throw new LuaError("cannot yield main thread");
 		return s.lua_yield(args);
@@ -256,6 +340,46 @@ public class LuaThread extends LuaValue {
 	}
 
 	/* DAN200 START */
+	/**
+	 * Set the budget shared by this thread and any coroutines it goes on to create.
+	 * @param budget the budget, or null to let this thread run without limit
+	 */
+	public void setBudget(Budget budget) {
+		callstack.budget = budget;
+	}
+
+	public Budget getBudget() {
+		return callstack.budget;
+	}
+
+	/**
+	 * Suspend the running coroutine and each coroutine which is resuming it, so that the 
+	 * outermost coroutine's {@link #resume(Varargs)} returns {@link #PAUSED} to the java code 
+	 * which called it. Resuming that coroutine again carries on from here, without the lua 
+	 * code running in it being able to tell that it was paused.
+	 * @return false if called outside a coroutine, in which case nothing can be paused
+	 */
+	public static boolean pause() {
+		State s = getRunning().state;
+		if (s.function == null)
+			return false;
+		s.lua_yield(PAUSED);
+		return true;
+	}
+
+	/**
+	 * Charge the running thread's budget for some instructions, and report them to any
+	 * debug count hook. Used by compiled code, which does not go through the interpreter.
+	 * @param count the number of instructions run
+	 */
+	public static void countInstructions(int count) {
+		Budget budget = getRunning().callstack.budget;
+		if (budget != null)
+			budget.charge(count);
+		if (DebugLib.DEBUG_ENABLED)
+			DebugLib.debugCount(count);
+	}
+
     public void addChild( LuaThread thread ) {
         this.children.addElement( new WeakReference( thread ) );
     }
@@ -290,6 +414,8 @@ public class LuaThread extends LuaValue {
 		int status = LuaThread.STATUS_INITIAL;
         /* DAN200 START */
         boolean abandoned = false;
+        /** The lua thread this state belongs to, only held while it is being resumed. */
+        LuaThread running = null;
         /* DAN200 END */
 
 		State(LuaThread lua_thread, LuaValue function) {
@@ -298,6 +424,9 @@ public class LuaThread extends LuaValue {
 		}
 		
 		public synchronized void run() {
+			/* DAN200 START */
+			coroutine_states.set(this);
+			/* DAN200 END */
 			try {
 				Varargs a = this.args;
 				this.args = LuaValue.NONE;
@@ -306,32 +435,66 @@ public class LuaThread extends LuaValue {
 				this.error = t.getMessage();
 			} finally {
 				this.status = LuaThread.STATUS_DEAD;
+				/* DAN200 START */
+				coroutine_states.set(null);
+				/* DAN200 END */
 				this.notify();
 			}
 		}
 
 		synchronized Varargs lua_resume(LuaThread new_thread, Varargs args) {
-			LuaThread previous_thread = LuaThread.running_thread;
+			/* DAN200 START */
+			//LuaThread previous_thread = LuaThread.running_thread;
+			LuaThread previous_thread = LuaThread.getRunning();
+			/* DAN200 END */
 			try {
-				LuaThread.running_thread = new_thread;
+				/* DAN200 START */
+				//LuaThread.running_thread = new_thread;
+				this.running = new_thread;
+				/* DAN200 END */
 				this.args = args;
 				if (this.status == STATUS_INITIAL) {
 					this.status = STATUS_RUNNING; 
-					new Thread(this, "Coroutine-"+(++coroutine_count)).start();
+					/* DAN200 START */
+					//new Thread(this, "Coroutine-"+(++coroutine_count)).start();
+					CoroutineExecutor e = LuaThread.executor;
+					if (e != null)
+						e.execute(this);
+					else
+						new Thread(this, "Coroutine-"+(++coroutine_count)).start();
+					/* DAN200 END */
 				} else {
 					this.notify();
 				}
 				previous_thread.state.status = STATUS_NORMAL;
 				this.status = STATUS_RUNNING;
 				this.wait();
+				/* DAN200 START */
+				// Pass a pause on up to whoever resumed us, and then carry on resuming this 
+				// coroutine once we are resumed ourselves.
+				while (this.result == PAUSED && this.status == STATUS_SUSPENDED) {
+					if (isMainThread(previous_thread))
+						return PAUSED;
+					previous_thread.state.lua_yield(PAUSED);
+					previous_thread.state.status = STATUS_NORMAL;
+					this.args = LuaValue.NONE;
+					this.status = STATUS_RUNNING;
+					this.notify();
+					this.wait();
+				}
+				/* DAN200 END */
 				return (this.error != null? 
 					LuaValue.varargsOf(LuaValue.FALSE, LuaValue.valueOf(this.error)):
 					LuaValue.varargsOf(LuaValue.TRUE, this.result));
 			} catch (InterruptedException ie) {
 				throw new OrphanedThread();
 			} finally {
-				running_thread = previous_thread;
-				running_thread.state.status =STATUS_RUNNING;
+				/* DAN200 START */
+				//running_thread = previous_thread;
+				//running_thread.state.status =STATUS_RUNNING;
+				this.running = null;
+				previous_thread.state.status =STATUS_RUNNING;
+				/* DAN200 END */
 				this.args = LuaValue.NONE;
 				this.result = LuaValue.NONE;
 				this.error = null;
@@ -365,7 +528,7 @@ public class LuaThread extends LuaValue {
 
 		/* DAN200 START */
         synchronized void lua_abandon(LuaThread thread) {
-            LuaThread current = LuaThread.running_thread;
+            LuaThread current = LuaThread.getRunning();
 
             try {
                 current.state.status = STATUS_NORMAL;
@@ -391,6 +554,16 @@ public class LuaThread extends LuaValue {
 	public static class CallStack {
 		final LuaFunction[]     functions     = new LuaFunction[MAX_CALLSTACK];
 		int                     calls         = 0;
+		/* DAN200 START */
+		/** Budget of the thread this call stack belongs to, kept here as it is cheap to reach from a call */
+		public Budget           budget        = null;
+		/** 
+		 * Where each {@link LuaClosure} on the stack last called out, as the pc after its call instruction. 
+		 * Only needed by errors caught before they unwind back to the closure they point at, such as by 
+		 * {@code pcall}; others are given their line by the closure itself, see {@link LuaError#onUnwind}.
+		 */
+		final int[]             pcs           = new int[MAX_CALLSTACK];
+		/* DAN200 END */
 
 		/**
 		 * Method to indicate the start of a call
@@ -399,7 +572,7 @@ public class LuaThread extends LuaValue {
 		final void onCall(LuaFunction function) {
 			functions[calls++] = function;
 			if (DebugLib.DEBUG_ENABLED) 
-				DebugLib.debugOnCall(running_thread, calls, function);
+				DebugLib.debugOnCall(getRunning(), calls, function);
 		}
 		
 		/**
@@ -409,7 +582,7 @@ public class LuaThread extends LuaValue {
 		public final void onReturn() {
 			functions[--calls] = null;
 			if (DebugLib.DEBUG_ENABLED) 
-				DebugLib.debugOnReturn(running_thread, calls);
+				DebugLib.debugOnReturn(getRunning(), calls);
 		}
 		
 		/**
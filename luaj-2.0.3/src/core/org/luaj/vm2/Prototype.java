@@ -52,6 +52,12 @@ public class Prototype {
 	public int is_vararg;
 	public int maxstacksize;
 
+	/* DAN200 START */
+	/** How often this prototype has been called or looped, used by {@link LuaClosure#jit} to find hot code */
+	public int hotness;
+	/** A compiled implementation of this prototype, set by {@link LuaClosure#jit} once it is hot */
+	public volatile Class compiled;
+	/* DAN200 END */
 	
 	public String toString() {
 		return source + ":" + linedefined+"-"+lastlinedefined;
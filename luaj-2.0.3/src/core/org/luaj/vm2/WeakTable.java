@@ -169,6 +169,8 @@ public class WeakTable extends LuaTable {
 	
 	// override to remove values for weak keys as we search
 	public int hashFindSlot(LuaValue key) {		
+		/* DAN200 START */
+		/*
 		int i = ( key.hashCode() & 0x7FFFFFFF ) % hashKeys.length;
 		LuaValue k;
 		while ( ( k = hashKeys[i] ) != null ) {
@@ -184,6 +186,20 @@ public class WeakTable extends LuaTable {
 			}
 		}
 		return i;
+		*/
+		// Clearing a slot leaves a tombstone in place, so the search carries on past it.
+		final int mask = hashKeys.length - 1;
+		int i = hashSlot( key.hashCode(), mask );
+		LuaValue k;
+		while ( ( k = hashKeys[i] ) != null ) {
+			if ( k.isweaknil() )
+				hashClearSlot(i);
+			else if ( k.raweq(key.strongkey()) )
+				return i;
+			i = ( i + 1 ) & mask;
+		}
+		return i;
+		/* DAN200 END */
 	}
 	
 	public int maxn() {
@@ -364,8 +364,13 @@ public class BaseLib extends OneArgFunction implements ResourceFinder {
 			LuaThread.setErrorFunc(olderr);
 			return result;
 		} catch ( LuaError le ) {
-			LuaThread.setErrorFunc(olderr);
+			/* DAN200 START */
+			// The message may only get its line, and go through the error function, once asked for
+			// LuaThread.setErrorFunc(olderr);
+			// String m = le.getMessage();
 			String m = le.getMessage();
+			LuaThread.setErrorFunc(olderr);
+			/* DAN200 END */
 			return varargsOf(FALSE, m!=null? valueOf(m): NIL);
 		} catch ( Exception e ) {
 			LuaThread.setErrorFunc(olderr);
@@ -402,6 +402,26 @@ public class DebugLib extends VarArgFunction {
 		}
 	}
 
+	/* DAN200 START */
+	/**
+	 * Called by code compiled with LuaJC, which has no bytecode to step through, so that count hooks
+	 * still fire.
+	 * @param count the number of instructions executed since the last call
+	 */
+	public static void debugCount( int count ) {
+		if ( !DEBUG_ENABLED )
+			return;
+		DebugState ds = getDebugState();
+		if ( ds.inhook || ds.hookcount <= 0 )
+			return;
+		ds.hookcodes += count;
+		if ( ds.hookcodes >= ds.hookcount ) {
+			ds.hookcodes = 0;
+			ds.callHookFunc( ds, COUNT, LuaValue.NIL );
+		}
+	}
+	/* DAN200 END */
+
 	// ------------------- library function implementations -----------------
 	
 	// j2se subclass may wish to override and provide actual console here. 
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2011 Luaj.org. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package org.luaj.vm2.lib.jse;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.luaj.vm2.LuaThread;
+
+/**
+ * {@link LuaThread.CoroutineExecutor} implementations for the JSE platform.
+ * <p>
+ * Two backends are available:
+ * <ul>
+ * <li>{@link #pooled()} keeps finished coroutine threads around and reuses them
+ * for new coroutines, so creating a coroutine rarely needs a new OS thread.</li>
+ * <li>{@link #virtual()} runs each coroutine on a virtual thread, so a suspended
+ * coroutine does not hold on to an OS thread at all. This is only used on JVMs
+ * where blocking in a monitor does not pin the carrier thread, as every suspended
+ * coroutine waits inside one.</li>
+ * </ul>
+ * To install one, assign it to {@link LuaThread#executor} before any coroutines are created:
+ * <pre> {@code
+ * LuaThread.executor = JseCoroutineExecutor.best();
+ * } </pre>
+ * @see LuaThread
+ */
+public class JseCoroutineExecutor implements LuaThread.CoroutineExecutor {
+
+	/** First java feature release in which blocking in a monitor no longer pins a virtual thread. */
+	private static final int VIRTUAL_THREAD_MONITOR_VERSION = 24;
+
+	private static int thread_count = 0;
+
+	private final Executor executor;
+	private final String name;
+
+	private JseCoroutineExecutor(Executor executor, String name) {
+		this.executor = executor;
+		this.name = name;
+	}
+
+	public void execute(Runnable body) {
+		executor.execute(body);
+	}
+
+	public String toString() {
+		return name;
+	}
+
+	/**
+	 * Create an executor which reuses idle coroutine threads.
+	 * @return the pooled executor
+	 */
+	public static JseCoroutineExecutor pooled() {
+		return new JseCoroutineExecutor(Executors.newCachedThreadPool(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Coroutine-"+nextThreadId());
+				thread.setDaemon(true);
+				return thread;
+			}
+		}), "pooled");
+	}
+
+	/**
+	 * Create an executor which runs each coroutine on its own virtual thread.
+	 * @return the virtual thread executor, or null if this JVM does not support them well enough
+	 */
+	public static JseCoroutineExecutor virtual() {
+		try {
+			Method version = Runtime.class.getMethod("version", new Class[0]);
+			Object runtimeVersion = version.invoke(null, new Object[0]);
+			Method feature = runtimeVersion.getClass().getMethod("feature", new Class[0]);
+			int featureVersion = ((Integer) feature.invoke(runtimeVersion, new Object[0])).intValue();
+			if (featureVersion < VIRTUAL_THREAD_MONITOR_VERSION)
+				return null;
+
+			Class builderClass = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual", new Class[0]).invoke(null, new Object[0]);
+			builder = builderClass.getMethod("name", new Class[] { String.class, Long.TYPE })
+				.invoke(builder, new Object[] { "Coroutine-", new Long(1) });
+			final ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory", new Class[0])
+				.invoke(builder, new Object[0]);
+			return new JseCoroutineExecutor(new Executor() {
+				public void execute(Runnable r) {
+					factory.newThread(r).start();
+				}
+			}, "virtual");
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Pick the best executor this JVM supports: virtual threads where available, otherwise a pool.
+	 * @return the chosen executor
+	 */
+	public static JseCoroutineExecutor best() {
+		JseCoroutineExecutor virtual = virtual();
+		return virtual != null? virtual: pooled();
+	}
+
+	private static synchronized int nextThreadId() {
+		return ++thread_count;
+	}
+}
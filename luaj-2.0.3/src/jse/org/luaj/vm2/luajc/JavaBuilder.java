@@ -53,13 +53,16 @@ import org.apache.bcel.generic.Type;
 import org.luaj.vm2.Buffer;
 import org.luaj.vm2.Lua;
 import org.luaj.vm2.LuaBoolean;
+import org.luaj.vm2.LuaClosure;
 import org.luaj.vm2.LuaDouble;
 import org.luaj.vm2.LuaInteger;
 import org.luaj.vm2.LuaNumber;
 import org.luaj.vm2.LuaString;
 import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaThread;
 import org.luaj.vm2.LuaValue;
 import org.luaj.vm2.Prototype;
+import org.luaj.vm2.UpValue;
 import org.luaj.vm2.Varargs;
 import org.luaj.vm2.lib.OneArgFunction;
 import org.luaj.vm2.lib.ThreeArgFunction;
@@ -79,6 +82,11 @@ public class JavaBuilder {
 	private static final String STR_LUATABLE = LuaTable.class.getName();
 	private static final String STR_BUFFER = Buffer.class.getName();
 	private static final String STR_STRING = String.class.getName();
+	/* DAN200 START */
+	private static final String STR_LUATHREAD = LuaThread.class.getName();
+	private static final String STR_UPVALUE = UpValue.class.getName();
+	private static final String STR_COMPILEDUPVALUES = LuaClosure.CompiledUpvalues.class.getName();
+	/* DAN200 END */
 
 	private static final ObjectType TYPE_VARARGS = new ObjectType(STR_VARARGS);
 	private static final ObjectType TYPE_LUAVALUE = new ObjectType(STR_LUAVALUE);
@@ -92,6 +100,9 @@ public class JavaBuilder {
 	
 	private static final ArrayType TYPE_LOCALUPVALUE = new ArrayType( TYPE_LUAVALUE, 1 );
 	private static final ArrayType TYPE_CHARARRAY = new ArrayType( Type.CHAR, 1 );
+	/* DAN200 START */
+	private static final ObjectType TYPE_UPVALUE = new ObjectType(STR_UPVALUE);
+	/* DAN200 END */
 
 	
 	private static final Class[] NO_INNER_CLASSES = {};
@@ -121,6 +132,9 @@ public class JavaBuilder {
 	private static final Type[] ARG_TYPES_INT_INT = { Type.INT, Type.INT };
 	private static final Type[] ARG_TYPES_LUAVALUE = { TYPE_LUAVALUE };
 	private static final Type[] ARG_TYPES_BUFFER = { TYPE_BUFFER };
+	/* DAN200 START */
+	private static final Type[] ARG_TYPES_UPVALUEARRAY = { new ArrayType( TYPE_UPVALUE, 1 ) };
+	/* DAN200 END */
 
 	// names, arg types for main prototype classes
 	private static final String[]     SUPER_NAME_N   = { STR_FUNC0, STR_FUNC1, STR_FUNC2, STR_FUNC3, STR_FUNCV, };
@@ -186,8 +200,15 @@ public class JavaBuilder {
 		}
 		
 		// create class generator
+		/* DAN200 START */
+		// cg = new ClassGen(classname, SUPER_NAME_N[superclassType], filename,
+		//		Constants.ACC_PUBLIC | Constants.ACC_SUPER, null);
+		boolean external = p.nups > 0;
+		for ( int i=0; i<p.nups; i++ )
+			external &= pi.isExternalUpvalue( pi.upvals[i] );
 		cg = new ClassGen(classname, SUPER_NAME_N[superclassType], filename,
-				Constants.ACC_PUBLIC | Constants.ACC_SUPER, null);
+				Constants.ACC_PUBLIC | Constants.ACC_SUPER, external? new String[] { STR_COMPILEDUPVALUES }: null);
+		/* DAN200 END */
 		cp = cg.getConstantPool(); // cg creates constant pool
 
 		// main instruction lists
@@ -197,12 +218,37 @@ public class JavaBuilder {
 
 		// create the fields
 		for ( int i=0; i<p.nups; i++ ) {
-			boolean isrw = pi.isReadWriteUpvalue( pi.upvals[i] ); 
-			Type uptype = isrw? (Type) TYPE_LOCALUPVALUE: (Type) TYPE_LUAVALUE;
+			/* DAN200 START */
+			// boolean isrw = pi.isReadWriteUpvalue( pi.upvals[i] ); 
+			// Type uptype = isrw? (Type) TYPE_LOCALUPVALUE: (Type) TYPE_LUAVALUE;
+			Type uptype = upvalueType( pi.upvals[i] );
+			/* DAN200 END */
 			FieldGen fg = new FieldGen(0, uptype, upvalueName(i), cp);
 			cg.addField(fg.getField());
 		}
 		
+		/* DAN200 START */
+		// upvalues from an interpreted closure are handed over through LuaClosure.CompiledUpvalues
+		if ( external ) {
+			InstructionList il = new InstructionList();
+			for ( int i=0; i<p.nups; i++ ) {
+				il.append(InstructionConstants.THIS);
+				il.append(new ALOAD(1));
+				il.append(new PUSH(cp, i));
+				il.append(InstructionConstants.AALOAD);
+				il.append(factory.createFieldAccess(classname, upvalueName(i), TYPE_UPVALUE, Constants.PUTFIELD));
+			}
+			il.append(InstructionConstants.RETURN);
+			MethodGen initmg = new MethodGen(Constants.ACC_PUBLIC | Constants.ACC_FINAL, Type.VOID,
+					ARG_TYPES_UPVALUEARRAY, new String[] { "upvalues" }, "initupvalues", 
+					classname, il, cp);
+			initmg.setMaxStack();
+			initmg.setMaxLocals();
+			cg.addMethod(initmg.getMethod());
+			il.dispose();
+		}
+		/* DAN200 END */
+		
 		// create the method
 		mg = new MethodGen( Constants.ACC_PUBLIC | Constants.ACC_FINAL, // access flags
 				RETURN_TYPE_N[superclassType], // return type
@@ -396,9 +442,23 @@ public class JavaBuilder {
 		return PREFIX_UPVALUE+upindex;
 	}
 	
+	/* DAN200 START */
+	private Type upvalueType(UpvalInfo u) {
+		if ( pi.isExternalUpvalue(u) )
+			return TYPE_UPVALUE;
+		return pi.isReadWriteUpvalue(u)? (Type) TYPE_LOCALUPVALUE: (Type) TYPE_LUAVALUE;
+	}
+	/* DAN200 END */
+	
 	public void loadUpvalue(int upindex) {
 		boolean isrw = pi.isReadWriteUpvalue( pi.upvals[upindex] ); 
 		append(InstructionConstants.THIS);
+		/* DAN200 START */
+		if ( pi.isExternalUpvalue( pi.upvals[upindex] ) ) {
+			append(factory.createFieldAccess(classname, upvalueName(upindex), TYPE_UPVALUE, Constants.GETFIELD));
+			append(factory.createInvoke(STR_UPVALUE, "getValue", TYPE_LUAVALUE, ARG_TYPES_NONE, Constants.INVOKEVIRTUAL));
+		} else
+		/* DAN200 END */
 		if ( isrw ) {
 			append(factory.createFieldAccess(classname, upvalueName(upindex), TYPE_LOCALUPVALUE, Constants.GETFIELD));
 			append(new PUSH(cp,0));
@@ -411,6 +471,13 @@ public class JavaBuilder {
 	public void storeUpvalue(int pc, int upindex, int slot) {
 		boolean isrw = pi.isReadWriteUpvalue( pi.upvals[upindex] ); 
 		append(InstructionConstants.THIS);
+		/* DAN200 START */
+		if ( pi.isExternalUpvalue( pi.upvals[upindex] ) ) {
+			append(factory.createFieldAccess(classname, upvalueName(upindex), TYPE_UPVALUE, Constants.GETFIELD));
+			loadLocal(pc, slot);
+			append(factory.createInvoke(STR_UPVALUE, "setValue", Type.VOID, ARG_TYPES_LUAVALUE, Constants.INVOKEVIRTUAL));
+		} else
+		/* DAN200 END */
 		if ( isrw ) {
 			append(factory.createFieldAccess(classname, upvalueName(upindex), TYPE_LOCALUPVALUE, Constants.GETFIELD));
 			append(new PUSH(cp,0));
@@ -609,8 +676,11 @@ public class JavaBuilder {
 	}
 
 	public void closureInitUpvalueFromUpvalue(String protoname, int newup, int upindex) {
-		boolean isrw = pi.isReadWriteUpvalue( pi.upvals[upindex] ); 
-		Type uptype = isrw? (Type) TYPE_LOCALUPVALUE: (Type) TYPE_LUAVALUE;
+		/* DAN200 START */
+		// boolean isrw = pi.isReadWriteUpvalue( pi.upvals[upindex] ); 
+		// Type uptype = isrw? (Type) TYPE_LOCALUPVALUE: (Type) TYPE_LUAVALUE;
+		Type uptype = upvalueType( pi.upvals[upindex] );
+		/* DAN200 END */
 		String srcname = upvalueName(upindex);
 		String destname = upvalueName(newup);
 		append(InstructionConstants.THIS);
@@ -785,6 +855,13 @@ public class JavaBuilder {
         append(factory.createInvoke(STR_LUAVALUE, "buffer", TYPE_BUFFER, Type.NO_ARGS, Constants.INVOKEVIRTUAL));
 	}
 
+	/* DAN200 START */
+	public void countInstructions(int count) {
+		append(new PUSH(cp, count));
+		append(factory.createInvoke(STR_LUATHREAD, "countInstructions", Type.VOID, ARG_TYPES_INT, Constants.INVOKESTATIC));
+	}
+	/* DAN200 END */
+
 	public void tovalue() {
         append(factory.createInvoke(STR_BUFFER, "value", TYPE_LUAVALUE, Type.NO_ARGS, Constants.INVOKEVIRTUAL));
 	}
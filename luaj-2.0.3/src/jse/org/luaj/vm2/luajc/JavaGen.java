@@ -70,6 +70,17 @@ public class JavaGen {
 		for ( int bi=0; bi<pi.blocklist.length; bi++ ) {
 			BasicBlock b0 = pi.blocklist[bi];
 
+			/* DAN200 START */
+			// There is no interpreter stepping through each instruction, so charge budgets and count hooks for
+			// the function being entered and for each time round a loop.
+			int count = (bi == 0)? 1: 0;
+			for ( int i=0, n=b0.prev!=null? b0.prev.length: 0; i<n; i++ )
+				if ( b0.prev[i].pc1 >= b0.pc0 )
+					count = Math.max( count, b0.prev[i].pc1 - b0.pc0 + 1 );
+			if ( count > 0 )
+				builder.countInstructions( count );
+			/* DAN200 END */
+
 			// convert upvalues that are phi-variables
 			for ( int slot=0; slot<p.maxstacksize; slot++ ) {
 				int pc = b0.pc0;
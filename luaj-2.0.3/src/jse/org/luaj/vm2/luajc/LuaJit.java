@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * Copyright (c) 2009-2011 Luaj.org. All rights reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ ******************************************************************************/
+package org.luaj.vm2.luajc;
+
+import java.security.CodeSource;
+import java.security.Permissions;
+import java.security.ProtectionDomain;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.luaj.vm2.LuaClosure;
+import org.luaj.vm2.LuaFunction;
+import org.luaj.vm2.Prototype;
+import org.luaj.vm2.UpValue;
+
+/**
+ * {@link LuaClosure.Jit} which compiles hot prototypes to java classes with {@link JavaGen}.
+ * <p>
+ * Compiled classes are defined in batches by a series of small class loaders. Once too many
+ * batches exist, the oldest is evicted: its prototypes go back to being interpreted, and its
+ * classes can be unloaded once the closures still using them are collected. 
+ * <p>
+ * Generated code only ever refers to luaj and core java classes, so the loaders only let it link 
+ * against luaj and the JDK. Their classes are also defined with no permissions, though that is only 
+ * enforced when a security manager is installed.
+ * <p>
+ * Prototypes with upvalues are compiled to share the {@link UpValue}s of the interpreted closure 
+ * they run for, see {@link LuaClosure.CompiledUpvalues}.
+ * <p>
+ * To install it, assign it to {@link LuaClosure#jit}:
+ * <pre> {@code
+ * LuaClosure.jit = new LuaJit( 32, 64 );
+ * } </pre>
+ * Compiled code reports loops and calls to {@link org.luaj.vm2.LuaThread#countInstructions(int)}, so
+ * budgets and count hooks keep working. Coroutines run on their own java threads, so they may yield from
+ * within compiled code as normal.
+ * @see LuaClosure#jit
+ */
+public class LuaJit implements LuaClosure.Jit {
+
+	private static final String PACKAGE = "org.luaj.vm2.luajc.jit.";
+
+	private final int maxLoaders;
+	private final int classesPerLoader;
+
+	private final LinkedList loaders = new LinkedList();
+	private Batch current;
+	private int nextClass = 0;
+
+	/**
+	 * @param maxLoaders the number of batches of compiled prototypes to keep before evicting the oldest
+	 * @param classesPerLoader the number of prototypes to compile into each batch
+	 */
+	public LuaJit(int maxLoaders, int classesPerLoader) {
+		this.maxLoaders = Math.max(1, maxLoaders);
+		this.classesPerLoader = Math.max(1, classesPerLoader);
+	}
+
+	public void onHot(Prototype p) {
+		// Compile outside the lock: prototypes shared between threads may rarely be compiled twice,
+		// in which case the first one in wins.
+		String classname;
+		synchronized ( this ) {
+			classname = PACKAGE + "J" + (nextClass++);
+		}
+
+		JavaGen gen;
+		try {
+			gen = new JavaGen(p, classname, p.source != null? p.source.tojstring(): "?");
+		} catch ( Throwable e ) {
+			// Leave anything we can't compile to the interpreter
+			return;
+		}
+
+		synchronized ( this ) {
+			if ( p.compiled != null )
+				return;
+
+			if ( current == null || current.prototypes.size() >= classesPerLoader ) {
+				current = new Batch();
+				loaders.addLast(current);
+				while ( loaders.size() > maxLoaders )
+					((Batch) loaders.removeFirst()).evict();
+			}
+
+			current.include(gen);
+			try {
+				// Link every class now, so bad bytecode is caught here rather than part way through a program
+				Class c = current.link(gen);
+				c.newInstance();
+				p.compiled = c;
+				current.prototypes.add(p);
+			} catch ( Throwable e ) {
+				// Bad bytecode: never try this prototype again
+				p.hotness = Integer.MIN_VALUE;
+			}
+		}
+	}
+
+	/**
+	 * Forget every compiled prototype.
+	 */
+	public synchronized void clear() {
+		while ( !loaders.isEmpty() )
+			((Batch) loaders.removeFirst()).evict();
+		current = null;
+	}
+
+	private static final class Batch extends ClassLoader {
+		private static final ClassLoader JDK = ClassLoader.getSystemClassLoader().getParent();
+		private static final ProtectionDomain DOMAIN = 
+			new ProtectionDomain(new CodeSource(null, (Certificate[]) null), new Permissions());
+		
+		private final Map unloaded = new HashMap();
+		private final List prototypes = new ArrayList();
+
+		Batch() {
+			super(LuaFunction.class.getClassLoader());
+		}
+
+		void include(JavaGen gen) {
+			unloaded.put(gen.classname, gen.bytecode);
+			for ( int i=0, n=gen.inners!=null? gen.inners.length: 0; i<n; i++ )
+				include(gen.inners[i]);
+		}
+
+		Class link(JavaGen gen) throws ClassNotFoundException {
+			Class c = Class.forName(gen.classname, true, this);
+			for ( int i=0, n=gen.inners!=null? gen.inners.length: 0; i<n; i++ )
+				link(gen.inners[i]);
+			return c;
+		}
+
+		void evict() {
+			for ( int i=0, n=prototypes.size(); i<n; i++ ) {
+				Prototype p = (Prototype) prototypes.get(i);
+				p.compiled = null;
+				p.hotness = 0;
+			}
+			prototypes.clear();
+		}
+
+		protected Class loadClass(String classname, boolean resolve) throws ClassNotFoundException {
+			// Anything outside luaj comes from the JDK's own loader, which can't see the application's classes
+			if ( !classname.startsWith("org.luaj.vm2.") )
+				return Class.forName(classname, false, JDK);
+			return super.loadClass(classname, resolve);
+		}
+
+		protected Class findClass(String classname) throws ClassNotFoundException {
+			byte[] bytes = (byte[]) unloaded.remove(classname);
+			if ( bytes != null )
+				return defineClass(classname, bytes, 0, bytes.length, DOMAIN);
+			throw new ClassNotFoundException(classname);
+		}
+	}
+}
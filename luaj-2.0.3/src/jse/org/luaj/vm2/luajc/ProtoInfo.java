@@ -23,9 +23,23 @@ public class ProtoInfo {
 	public final UpvalInfo[][] openups;   // per slot, upvalues allocated by this prototype
 	
 	public ProtoInfo(Prototype p, String name) {
-		this(p,name,null);
+		/* DAN200 START */
+		// this(p,name,null);
+		this(p,name,externalUpvalues(p.nups));
+		/* DAN200 END */
 	}
 	
+	/* DAN200 START */
+	private static UpvalInfo[] externalUpvalues(int nups) {
+		if ( nups == 0 )
+			return null;
+		UpvalInfo[] u = new UpvalInfo[nups];
+		for ( int i=0; i<nups; i++ )
+			u[i] = new UpvalInfo();
+		return u;
+	}
+	/* DAN200 END */
+	
 	private ProtoInfo(Prototype p, String name, UpvalInfo[] u) {
 		this.name = name;
 		this.prototype = p;
@@ -458,4 +472,10 @@ public class ProtoInfo {
 	public boolean isReadWriteUpvalue(UpvalInfo u) {
 		return u.rw;
 	}
+
+	/* DAN200 START */
+	public boolean isExternalUpvalue(UpvalInfo u) {
+		return u.external;
+	}
+	/* DAN200 END */
 }
@@ -11,6 +11,9 @@ public class UpvalInfo {
 	int nvars;		// number of vars involved
 	VarInfo var[];	// list of vars
 	boolean rw;     // read-write
+	/* DAN200 START */
+	boolean external; // from outside the prototypes being compiled
+	/* DAN200 END */
 	
 	public UpvalInfo(ProtoInfo pi, int pc, int slot) {
 		this.pi = pi;
@@ -23,6 +26,22 @@ public class UpvalInfo {
 		this.rw = nvars > 1;		
 	}
 
+	/* DAN200 START */
+	/**
+	 * Create an upvalue which comes from outside the prototypes being compiled, such as from the 
+	 * interpreted closure a hot prototype is compiled for. It is kept in the {@link org.luaj.vm2.UpValue} 
+	 * it came from, as that may still be open on the interpreter's stack.
+	 */
+	public UpvalInfo() {
+		this.pi = null;
+		this.slot = -1;
+		this.nvars = 0;
+		this.var = null;
+		this.rw = true;
+		this.external = true;
+	}
+	/* DAN200 END */
+
 	private boolean includeVarAndPosteriorVars( VarInfo var ) {
 		if ( var == null || var == VarInfo.INVALID )
 			return false;
@@ -111,7 +130,10 @@ public class UpvalInfo {
 
 	public String toString() {
 		StringBuffer sb = new StringBuffer();
-		sb.append( pi.name );
+		/* DAN200 START */
+		// sb.append( pi.name );
+		sb.append( external? "external": pi.name );
+		/* DAN200 END */
 		for ( int i=0; i<nvars; i++ ) {
 			sb.append( i>0? ",": " " );
 			sb.append( String.valueOf(var[i]));
@@ -19,9 +19,11 @@ import dan200.computercraft.api.pocket.IPocketUpgrade;
 import dan200.computercraft.api.redstone.IBundledRedstoneProvider;
 import dan200.computercraft.api.turtle.ITurtleUpgrade;
 import dan200.computercraft.core.apis.AddressPredicate;
+import dan200.computercraft.core.computer.BootQueue;
 import dan200.computercraft.core.filesystem.ComboMount;
 import dan200.computercraft.core.filesystem.FileMount;
 import dan200.computercraft.core.filesystem.JarMount;
+import dan200.computercraft.shared.command.CommandComputerCraft;
 import dan200.computercraft.shared.common.DefaultBundledRedstoneProvider;
 import dan200.computercraft.shared.computer.blocks.BlockCommandComputer;
 import dan200.computercraft.shared.computer.blocks.BlockComputer;
@@ -82,6 +84,7 @@ import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -126,6 +129,14 @@ public class ComputerCraft
     public static boolean disable_lua51_features = false;
     public static String default_computer_settings = "";
     public static boolean logPeripheralErrors = false;
+    public static int computer_threads = 1;
+    public static int computer_time_slice = 5;
+    public static int main_thread_time = 10;
+    public static int main_thread_computer_time = 5;
+    public static boolean precompiled_rom = false;
+    public static boolean lua_jit = false;
+    public static boolean pause_computers = false;
+    public static int max_booting_computers = 4;
 
     public static boolean enableCommandBlock = false;
     public static boolean turtlesNeedFuel = true;
@@ -205,6 +216,14 @@ public class ComputerCraft
         public static Property disable_lua51_features;
         public static Property default_computer_settings;
         public static Property logPeripheralErrors;
+        public static Property computer_threads;
+        public static Property computer_time_slice;
+        public static Property main_thread_time;
+        public static Property main_thread_computer_time;
+        public static Property precompiled_rom;
+        public static Property lua_jit;
+        public static Property pause_computers;
+        public static Property max_booting_computers;
 
         public static Property enableCommandBlock;
         public static Property turtlesNeedFuel;
@@ -302,6 +321,43 @@ public class ComputerCraft
         Config.logPeripheralErrors.setComment( "Log exceptions thrown by peripherals and other Lua objects.\n" +
             "This makes it easier for mod authors to debug problems, but may result in log spam should people use buggy methods." );
         
+        Config.computer_threads = Config.config.get( Configuration.CATEGORY_GENERAL, "computer_threads", computer_threads );
+        Config.computer_threads.setComment( "Set the number of threads computers can run on. A higher number means more computers can run at once, but may induce lag.\n" +
+            "Please note that some mods may not work with a thread count higher than 1. Requires a restart to take effect." );
+        Config.computer_threads.setRequiresMcRestart( true );
+
+        Config.computer_time_slice = Config.config.get( Configuration.CATEGORY_GENERAL, "computer_time_slice", computer_time_slice );
+        Config.computer_time_slice.setComment( "The time in milliseconds a computer may spend working through its events before other waiting computers are given a turn.\n" +
+            "Computers which have used the least time so far are always run first." );
+
+        Config.main_thread_time = Config.config.get( Configuration.CATEGORY_GENERAL, "main_thread_time", main_thread_time );
+        Config.main_thread_time.setComment( "The time in milliseconds all computers may spend running tasks on the main thread each tick, such as\n" +
+            "peripheral calls and commands. Any tasks which do not fit are left until the next tick." );
+
+        Config.main_thread_computer_time = Config.config.get( Configuration.CATEGORY_GENERAL, "main_thread_computer_time", main_thread_computer_time );
+        Config.main_thread_computer_time.setComment( "The time in milliseconds a single computer may spend running tasks on the main thread each tick.\n" +
+            "Computers which go over this limit must wait for later ticks to make up for it." );
+
+        Config.precompiled_rom = Config.config.get( Configuration.CATEGORY_GENERAL, "precompiled_rom", precompiled_rom );
+        Config.precompiled_rom.setComment( "Run the bios and ROM from the Java classes they were compiled to when ComputerCraft was built, rather than\n" +
+            "interpreting them. This makes the ROM faster, but errors raised inside it will not include line numbers, which\n" +
+            "makes programs harder to debug. Disable this if a ROM program misbehaves." );
+
+        Config.lua_jit = Config.config.get( Configuration.CATEGORY_GENERAL, "lua_jit", lua_jit );
+        Config.lua_jit.setComment( "Compile frequently run Lua functions into Java classes while computers are running. This makes CPU heavy\n" +
+            "programs much faster, but error messages from compiled functions will not include line numbers." );
+
+        Config.pause_computers = Config.config.get( Configuration.CATEGORY_GENERAL, "pause_computers", pause_computers );
+        Config.pause_computers.setComment( "Pause computers which run for longer than computer_time_slice without yielding, and carry on running them\n" +
+            "once other computers have had a turn. Long running programs then share the computer threads fairly, and are\n" +
+            "never aborted for running too long without yielding, however long they run. They can still be stopped with\n" +
+            "Ctrl+T or by shutting the computer down. Code which can't be paused, such as a call into Java which never\n" +
+            "returns, is still aborted as normal." );
+
+        Config.max_booting_computers = Config.config.get( Configuration.CATEGORY_GENERAL, "max_booting_computers", max_booting_computers );
+        Config.max_booting_computers.setComment( "The number of computers which may boot at once. Any others wait their turn, with those closest to a\n" +
+            "player booting first. This stops the server grinding to a halt when many computers start together." );
+
         Config.enableCommandBlock = Config.config.get( Configuration.CATEGORY_GENERAL, "enableCommandBlock", enableCommandBlock );
         Config.enableCommandBlock.setComment( "Enable Command Block peripheral support" );
 
@@ -367,6 +423,14 @@ public class ComputerCraft
         disable_lua51_features = Config.disable_lua51_features.getBoolean();
         default_computer_settings = Config.default_computer_settings.getString();
         logPeripheralErrors = Config.logPeripheralErrors.getBoolean();
+        computer_threads = Math.max( 1, Config.computer_threads.getInt() );
+        computer_time_slice = Math.max( 0, Config.computer_time_slice.getInt() );
+        main_thread_time = Math.max( 1, Config.main_thread_time.getInt() );
+        main_thread_computer_time = Math.max( 1, Config.main_thread_computer_time.getInt() );
+        precompiled_rom = Config.precompiled_rom.getBoolean();
+        lua_jit = Config.lua_jit.getBoolean();
+        pause_computers = Config.pause_computers.getBoolean();
+        max_booting_computers = Math.max( 1, Config.max_booting_computers.getInt() );
 
         enableCommandBlock = Config.enableCommandBlock.getBoolean();
 
@@ -400,6 +464,7 @@ public class ComputerCraft
     @Mod.EventHandler
     public void onServerStarting( FMLServerStartingEvent event )
     {
+        event.registerServerCommand( new CommandComputerCraft() );
     }
 
     @Mod.EventHandler
@@ -409,6 +474,7 @@ public class ComputerCraft
         {
             ComputerCraft.serverComputerRegistry.reset();
             WirelessNetwork.resetNetworks();
+            BootQueue.reset();
         }
     }
 
@@ -419,6 +485,7 @@ public class ComputerCraft
         {
             ComputerCraft.serverComputerRegistry.reset();
             WirelessNetwork.resetNetworks();
+            BootQueue.reset();
         }
     }
 
@@ -529,6 +596,19 @@ public class ComputerCraft
         networkEventChannel.sendTo( encode( packet ), (EntityPlayerMP)player );
     }
 
+    public static void sendToPlayers( Collection<? extends EntityPlayer> players, ComputerCraftPacket packet )
+    {
+        if( players.isEmpty() ) return;
+
+        // Only serialise the packet once, however many players it's going to
+        PacketBuffer buffer = new PacketBuffer( Unpooled.buffer() );
+        packet.toBytes( buffer );
+        for( EntityPlayer player : players )
+        {
+            networkEventChannel.sendTo( new FMLProxyPacket( new PacketBuffer( buffer.copy() ), "CC" ), (EntityPlayerMP)player );
+        }
+    }
+
     public static void sendToAllPlayers( ComputerCraftPacket packet )
     {
         networkEventChannel.sendToAll( encode( packet ) );
@@ -22,6 +22,56 @@ public interface IPacketNetwork
      */
     void addReceiver( @Nonnull IPacketReceiver receiver );
 
+    /**
+     * Add a receiver to the network which only wishes to hear packets on certain channels.
+     *
+     * Unlike {@link #addReceiver(IPacketReceiver)}, the network need not send this receiver any packets on channels
+     * it has not opened, either here or with {@link #openChannel(IPacketReceiver, int)}. Receivers should still check
+     * the channel of any packet they are given, as networks are free to deliver everything.
+     *
+     * @param receiver The receiver to register to the network.
+     * @param channels The channels the receiver is initially listening on.
+     * @see #openChannel(IPacketReceiver, int)
+     * @see #closeChannel(IPacketReceiver, int)
+     */
+    default void addReceiver( @Nonnull IPacketReceiver receiver, @Nonnull int[] channels )
+    {
+        addReceiver( receiver );
+    }
+
+    /**
+     * Start sending packets on a channel to a receiver added with {@link #addReceiver(IPacketReceiver, int[])}.
+     *
+     * @param receiver The receiver which is now listening on this channel.
+     * @param channel  The channel to open.
+     */
+    default void openChannel( @Nonnull IPacketReceiver receiver, int channel )
+    {
+    }
+
+    /**
+     * Stop sending packets on a channel to a receiver added with {@link #addReceiver(IPacketReceiver, int[])}.
+     *
+     * @param receiver The receiver which is no longer listening on this channel.
+     * @param channel  The channel to close.
+     */
+    default void closeChannel( @Nonnull IPacketReceiver receiver, int channel )
+    {
+    }
+
+    /**
+     * Let the network know a receiver may have moved, changed world or changed range.
+     *
+     * Networks may index receivers by where they are, in which case this should be called whenever that changes so
+     * packets sent near its new position still reach it. Receivers which never call this are still sent packets,
+     * though the network may have to check every such receiver on every transmission.
+     *
+     * @param receiver The receiver which may have moved.
+     */
+    default void updateReceiver( @Nonnull IPacketReceiver receiver )
+    {
+    }
+
     /**
      * Remove a receiver from the network.
      *
@@ -6,6 +6,7 @@
 
 package dan200.computercraft.client.gui;
 
+import dan200.computercraft.core.terminal.ColourBuffer;
 import dan200.computercraft.core.terminal.TextBuffer;
 import dan200.computercraft.shared.util.Palette;
 import net.minecraft.client.renderer.BufferBuilder;
@@ -87,7 +88,7 @@ public class FixedWidthFontRenderer
         return (colour == 0 || colour == 15 || colour == 7 || colour == 8);
     }
 
-    public void drawStringBackgroundPart( int x, int y, TextBuffer backgroundColour, double leftMarginSize, double rightMarginSize, boolean greyScale, Palette p )
+    public void drawStringBackgroundPart( int x, int y, ColourBuffer backgroundColour, double leftMarginSize, double rightMarginSize, boolean greyScale, Palette p )
     {
         // Draw the quads
         Tessellator tessellator = Tessellator.getInstance();
@@ -95,8 +96,8 @@ public class FixedWidthFontRenderer
         renderer.begin( GL11.GL_TRIANGLES, DefaultVertexFormats.POSITION_COLOR );
         if( leftMarginSize > 0.0 )
         {
-            int colour1 = "0123456789abcdef".indexOf( backgroundColour.charAt( 0 ) );
-            if( colour1 < 0 || (greyScale && !isGreyScale(colour1)) )
+            int colour1 = backgroundColour.getBackgroundColour( 0 );
+            if( greyScale && !isGreyScale(colour1) )
             {
                 colour1 = 15;
             }
@@ -104,8 +105,8 @@ public class FixedWidthFontRenderer
         }
         if( rightMarginSize > 0.0 )
         {
-            int colour2 = "0123456789abcdef".indexOf( backgroundColour.charAt( backgroundColour.length() - 1 ) );
-            if( colour2 < 0 || (greyScale && !isGreyScale(colour2)) )
+            int colour2 = backgroundColour.getBackgroundColour( backgroundColour.length() - 1 );
+            if( greyScale && !isGreyScale(colour2) )
             {
                 colour2 = 15;
             }
@@ -113,8 +114,8 @@ public class FixedWidthFontRenderer
         }
         for( int i = 0; i < backgroundColour.length(); i++ )
         {
-            int colour = "0123456789abcdef".indexOf( backgroundColour.charAt( i ) );
-            if( colour < 0 || ( greyScale && !isGreyScale( colour ) ) )
+            int colour = backgroundColour.getBackgroundColour( i );
+            if( greyScale && !isGreyScale( colour ) )
             {
                 colour = 15;
             }
@@ -125,12 +126,12 @@ public class FixedWidthFontRenderer
         GlStateManager.enableTexture2D();
     }
 
-    public void drawStringTextPart( int x, int y, TextBuffer s, TextBuffer textColour, boolean greyScale, Palette p )
+    public void drawStringTextPart( int x, int y, TextBuffer s, ColourBuffer textColour, boolean greyScale, Palette p )
     {
     	drawStringTextPart(FontManager.LEGACY, x, y, s, textColour, greyScale, p);
     }
 
-    public void drawStringTextPart( FontDefinition fd, int x, int y, TextBuffer s, TextBuffer textColour, boolean greyScale, Palette p )
+    public void drawStringTextPart( FontDefinition fd, int x, int y, TextBuffer s, ColourBuffer textColour, boolean greyScale, Palette p )
     {
         // Draw the quads
         Tessellator tessellator = Tessellator.getInstance();
@@ -170,8 +171,8 @@ public class FixedWidthFontRenderer
             }
     	            
             // Switch colour
-            int colour = "0123456789abcdef".indexOf( textColour.charAt( i ) );
-            if( colour < 0 || ( greyScale && !isGreyScale( colour ) ) )
+            int colour = textColour.getTextColour( i );
+            if( greyScale && !isGreyScale( colour ) )
             {
                 colour = 0;
             }
@@ -186,12 +187,12 @@ public class FixedWidthFontRenderer
     	}
     }
 
-    public void drawString( TextBuffer s, int x, int y, TextBuffer textColour, TextBuffer backgroundColour, double leftMarginSize, double rightMarginSize, boolean greyScale, Palette p )
+    public void drawString( TextBuffer s, int x, int y, ColourBuffer textColour, ColourBuffer backgroundColour, double leftMarginSize, double rightMarginSize, boolean greyScale, Palette p )
     {
     	drawString(FontManager.LEGACY, s, x, y, textColour, backgroundColour, leftMarginSize, rightMarginSize, greyScale, p);
     }
 
-    public void drawString( FontDefinition fd, TextBuffer s, int x, int y, TextBuffer textColour, TextBuffer backgroundColour, double leftMarginSize, double rightMarginSize, boolean greyScale, Palette p )
+    public void drawString( FontDefinition fd, TextBuffer s, int x, int y, ColourBuffer textColour, ColourBuffer backgroundColour, double leftMarginSize, double rightMarginSize, boolean greyScale, Palette p )
     {
         // Draw background
         if( backgroundColour != null )
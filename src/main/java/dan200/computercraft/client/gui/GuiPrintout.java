@@ -7,6 +7,7 @@
 package dan200.computercraft.client.gui;
 
 import dan200.computercraft.ComputerCraft;
+import dan200.computercraft.core.terminal.ColourBuffer;
 import dan200.computercraft.core.terminal.TextBuffer;
 import dan200.computercraft.shared.media.inventory.ContainerHeldItem;
 import dan200.computercraft.shared.media.items.ItemPrintout;
@@ -28,7 +29,7 @@ public class GuiPrintout extends GuiContainer
     private final boolean m_book;
     private final int m_pages;
     private final TextBuffer[] m_text;
-    private final TextBuffer[] m_colours;
+    private final ColourBuffer[] m_colours;
     private int m_page;
     
     private FontDefinition font; // TODO support setting font names in print outs...
@@ -45,10 +46,10 @@ public class GuiPrintout extends GuiContainer
             m_text[i] = new TextBuffer( text[i] );
         }
         String[] colours = ItemPrintout.getColours( container.getStack() );
-        m_colours = new TextBuffer[ colours.length ];
+        m_colours = new ColourBuffer[ colours.length ];
         for( int i=0; i<m_colours.length; ++i )
         {
-            m_colours[i] = new TextBuffer( colours[i] );
+            m_colours[i] = new ColourBuffer( colours[i], "" );
         }
 
         m_pages = Math.max( m_text.length / ItemPrintout.LINES_PER_PAGE, 1 );
@@ -9,6 +9,7 @@ package dan200.computercraft.client.gui.widgets;
 import dan200.computercraft.ComputerCraft;
 import dan200.computercraft.client.gui.FixedWidthFontRenderer;
 import dan200.computercraft.client.gui.FontDefinition;
+import dan200.computercraft.core.terminal.ColourBuffer;
 import dan200.computercraft.core.terminal.Terminal;
 import dan200.computercraft.core.terminal.TextBuffer;
 import dan200.computercraft.shared.computer.core.IComputer;
@@ -420,27 +421,26 @@ public class WidgetTerminal extends Widget
             	final FontDefinition font = (FontDefinition) ComputerCraft.getFont(m_computer.getComputer().getTerminal().getFontName());
                 if( m_topMargin > 0 )
                 {
-                    fontRenderer.drawString( font, emptyLine, x, startY, terminal.getTextColourLine( 0 ), terminal.getBackgroundColourLine( 0 ), m_leftMargin, m_rightMargin, greyscale, palette );
+                    fontRenderer.drawString( font, emptyLine, x, startY, terminal.getColourLine( 0 ), terminal.getColourLine( 0 ), m_leftMargin, m_rightMargin, greyscale, palette );
                 }
                 if( m_bottomMargin > 0 )
                 {
-                    fontRenderer.drawString( font, emptyLine, x, startY + 2 * m_bottomMargin + ( th - 1 ) * FixedWidthFontRenderer.FONT_HEIGHT, terminal.getTextColourLine( th - 1 ), terminal.getBackgroundColourLine( th - 1 ), m_leftMargin, m_rightMargin, greyscale, palette );
+                    fontRenderer.drawString( font, emptyLine, x, startY + 2 * m_bottomMargin + ( th - 1 ) * FixedWidthFontRenderer.FONT_HEIGHT, terminal.getColourLine( th - 1 ), terminal.getColourLine( th - 1 ), m_leftMargin, m_rightMargin, greyscale, palette );
                 }
 
                 // Draw lines
                 for( int line = 0; line < th; ++line )
                 {
                     TextBuffer text = terminal.getLine( line );
-                    TextBuffer colour = terminal.getTextColourLine( line );
-                    TextBuffer backgroundColour = terminal.getBackgroundColourLine( line );
-                    fontRenderer.drawString( font, text, x, y, colour, backgroundColour, m_leftMargin, m_rightMargin, greyscale, palette );
+                    ColourBuffer colour = terminal.getColourLine( line );
+                    fontRenderer.drawString( font, text, x, y, colour, colour, m_leftMargin, m_rightMargin, greyscale, palette );
                     y += FixedWidthFontRenderer.FONT_HEIGHT;
                 }
 
                 if( tblink && tx >= 0 && ty >= 0 && tx < tw && ty < th )
                 {
                     TextBuffer cursor = new TextBuffer( '_', 1 );
-                    TextBuffer cursorColour = new TextBuffer( "0123456789abcdef".charAt( terminal.getTextColour() ), 1 );
+                    ColourBuffer cursorColour = new ColourBuffer( terminal.getTextColour(), terminal.getBackgroundColour(), 1 );
 
                     fontRenderer.drawString(
                     		font,
@@ -385,6 +385,7 @@ public class ComputerCraftProxyClient extends ComputerCraftProxyCommon
         switch( packet.m_packetType )
         {
             case ComputerCraftPacket.ComputerChanged:
+            case ComputerCraftPacket.ComputerTerminalChanged:
             case ComputerCraftPacket.ComputerDeleted:
             {
                 // Packet from Server to Client
@@ -428,6 +429,20 @@ public class ComputerCraftProxyClient extends ComputerCraftProxyCommon
                 ComputerCraft.clientComputerRegistry.get( instanceID ).handlePacket( packet, player );
                 break;
             }
+            case ComputerCraftPacket.ComputerTerminalChanged:
+            {
+                int instanceID = packet.m_dataInt[ 0 ];
+                if( !ComputerCraft.clientComputerRegistry.contains( instanceID ) )
+                {
+                    // Registering the computer requests its full state, so there's nothing to apply these changes to yet
+                    ComputerCraft.clientComputerRegistry.add( instanceID, new ClientComputer( instanceID ) );
+                }
+                else
+                {
+                    ComputerCraft.clientComputerRegistry.get( instanceID ).handlePacket( packet, player );
+                }
+                break;
+            }
             case ComputerCraftPacket.ComputerDeleted:
             {
                 int instanceID = packet.m_dataInt[ 0 ];
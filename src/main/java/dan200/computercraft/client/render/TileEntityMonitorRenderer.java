@@ -9,6 +9,7 @@ package dan200.computercraft.client.render;
 import dan200.computercraft.ComputerCraft;
 import dan200.computercraft.client.gui.FixedWidthFontRenderer;
 import dan200.computercraft.client.gui.FontDefinition;
+import dan200.computercraft.core.terminal.ColourBuffer;
 import dan200.computercraft.core.terminal.Terminal;
 import dan200.computercraft.core.terminal.TextBuffer;
 import dan200.computercraft.shared.common.ClientTerminal;
@@ -151,9 +152,9 @@ public class TileEntityMonitorRenderer extends TileEntitySpecialRenderer<TileMon
                                 {
                                     GlStateManager.scale( 1.0, marginSquash, 1.0 );
                                     GlStateManager.translate( 0.0, -marginYSize / marginSquash, 0.0 );
-                                    fontRenderer.drawStringBackgroundPart( 0, 0, terminal.getBackgroundColourLine( 0 ), marginXSize, marginXSize, greyscale, palette );
+                                    fontRenderer.drawStringBackgroundPart( 0, 0, terminal.getColourLine( 0 ), marginXSize, marginXSize, greyscale, palette );
                                     GlStateManager.translate( 0.0, ( marginYSize + height * FixedWidthFontRenderer.FONT_HEIGHT ) / marginSquash, 0.0 );
-                                    fontRenderer.drawStringBackgroundPart( 0, 0, terminal.getBackgroundColourLine( height - 1 ), marginXSize, marginXSize, greyscale, palette );
+                                    fontRenderer.drawStringBackgroundPart( 0, 0, terminal.getColourLine( height - 1 ), marginXSize, marginXSize, greyscale, palette );
                                 }
                                 finally
                                 {
@@ -165,7 +166,7 @@ public class TileEntityMonitorRenderer extends TileEntitySpecialRenderer<TileMon
                                 {
                                     fontRenderer.drawStringBackgroundPart(
                                             0, FixedWidthFontRenderer.FONT_HEIGHT * y,
-                                            terminal.getBackgroundColourLine( y ),
+                                            terminal.getColourLine( y ),
                                             marginXSize, marginXSize,
                                             greyscale,
                                             palette
@@ -195,7 +196,7 @@ public class TileEntityMonitorRenderer extends TileEntitySpecialRenderer<TileMon
                                     		font,
                                             0, FixedWidthFontRenderer.FONT_HEIGHT * y,
                                             terminal.getLine( y ),
-                                            terminal.getTextColourLine( y ),
+                                            terminal.getColourLine( y ),
                                             greyscale,
                                             palette
                                     );
@@ -221,7 +222,7 @@ public class TileEntityMonitorRenderer extends TileEntitySpecialRenderer<TileMon
                                 if( terminal.getCursorBlink() && cursorX >= 0 && cursorX < width && cursorY >= 0 && cursorY < height )
                                 {
                                     TextBuffer cursor = new TextBuffer( "_" );
-                                    TextBuffer cursorColour = new TextBuffer( "0123456789abcdef".charAt( terminal.getTextColour() ), 1 );
+                                    ColourBuffer cursorColour = new ColourBuffer( terminal.getTextColour(), terminal.getBackgroundColour(), 1 );
                                     fontRenderer.drawString(
                                     		font,
                                             cursor,
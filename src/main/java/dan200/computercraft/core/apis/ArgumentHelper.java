@@ -269,7 +269,7 @@ public final class ArgumentHelper
         }
     }
 
-    private static double checkReal( int index, double value ) throws LuaException
+    static double checkReal( int index, double value ) throws LuaException
     {
         if( Double.isNaN( value ) )
         {
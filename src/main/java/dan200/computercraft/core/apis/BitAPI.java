@@ -11,12 +11,10 @@ import dan200.computercraft.api.lua.LuaException;
 
 import javax.annotation.Nonnull;
 
-import static dan200.computercraft.core.apis.ArgumentHelper.getInt;
-
 // Contributed by Nia
 // Based on LuaBit (http://luaforge.net/projects/bit)
  
-public class BitAPI implements ILuaAPI
+public class BitAPI implements ILuaAPI, ITypedLuaObject
 {
     private static final int BNOT                    = 0;
     private static final int BAND                    = 1;
@@ -63,30 +61,30 @@ public class BitAPI implements ILuaAPI
     }
     
     @Override
-    public Object[] callMethod( @Nonnull ILuaContext context, int method, @Nonnull Object[] args ) throws LuaException
+    public Object[] callMethod( @Nonnull ILuaContext context, int method, @Nonnull IArguments args ) throws LuaException
     {
         int ret = 0;
         switch(method) {
             case BNOT:
-                ret = ~getInt( args, 0 );
+                ret = ~args.getInt( 0 );
                 break;
             case BAND:
-                ret = getInt( args, 0 ) & getInt( args, 1 );
+                ret = args.getInt( 0 ) & args.getInt( 1 );
                 break;
             case BOR:
-                ret = getInt( args, 0 ) | getInt( args, 1 );
+                ret = args.getInt( 0 ) | args.getInt( 1 );
                 break;
             case BXOR:
-                ret = getInt( args, 0 ) ^ getInt( args, 1 );
+                ret = args.getInt( 0 ) ^ args.getInt( 1 );
                 break;
             case BRSHIFT:
-                ret = getInt( args, 0 ) >> getInt( args, 1 );
+                ret = args.getInt( 0 ) >> args.getInt( 1 );
                 break;
             case BLSHIFT:
-                ret = getInt( args, 0 ) << getInt( args, 1 );
+                ret = args.getInt( 0 ) << args.getInt( 1 );
                 break;
             case BLOGIC_RSHIFT:
-                ret = getInt( args, 0 ) >>> getInt( args, 1 );
+                ret = args.getInt( 0 ) >>> args.getInt( 1 );
                 break;
         }
         
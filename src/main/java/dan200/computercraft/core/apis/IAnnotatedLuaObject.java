@@ -0,0 +1,33 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2017. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package dan200.computercraft.core.apis;
+
+import dan200.computercraft.api.lua.ILuaContext;
+import dan200.computercraft.api.lua.LuaException;
+
+import javax.annotation.Nonnull;
+
+/**
+ * An {@link ITypedLuaObject} whose methods are the {@link LuaFunction}s declared on its class, rather than an
+ * index into {@link #getMethodNames()} handled by a {@code switch}.
+ */
+public interface IAnnotatedLuaObject extends ITypedLuaObject
+{
+    @Nonnull
+    @Override
+    default String[] getMethodNames()
+    {
+        return LuaMethods.of( getClass() ).getNames();
+    }
+
+    @Override
+    default Object[] callMethod( @Nonnull ILuaContext context, int method, @Nonnull IArguments arguments ) throws LuaException, InterruptedException
+    {
+        LuaMethods.LuaMethod luaMethod = LuaMethods.of( getClass() ).getMethod( method );
+        return luaMethod == null ? null : luaMethod.call( this, context, arguments );
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2017. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package dan200.computercraft.core.apis;
+
+import dan200.computercraft.api.lua.LuaException;
+import dan200.computercraft.shared.utf.UtfString;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * The arguments passed to a method of an {@link ITypedLuaObject}.
+ *
+ * Unlike the {@code Object[]} passed to {@link dan200.computercraft.api.lua.ILuaObject#callMethod}, arguments
+ * are only converted when they are asked for, and then straight to the type wanted. Arguments are numbered from
+ * 0, and the getters fail with the same messages as those in {@link ArgumentHelper}.
+ *
+ * An instance is only valid for the duration of the call it was passed to.
+ */
+public interface IArguments
+{
+    /**
+     * @return The number of arguments passed.
+     */
+    int count();
+
+    /**
+     * Get an argument converted to a Java object, in the same way as for {@link dan200.computercraft.api.lua.ILuaObject}.
+     *
+     * @return The argument, or null if it is nil or missing.
+     */
+    @Nullable
+    Object get( int index );
+
+    /**
+     * @return Every argument converted to a Java object.
+     * @see #get(int)
+     */
+    @Nonnull
+    Object[] toArray();
+
+    double getNumber( int index ) throws LuaException;
+
+    int getInt( int index ) throws LuaException;
+
+    default double getReal( int index ) throws LuaException
+    {
+        return ArgumentHelper.checkReal( index, getNumber( index ) );
+    }
+
+    boolean getBoolean( int index ) throws LuaException;
+
+    @Nonnull
+    String getString( int index ) throws LuaException;
+
+    /**
+     * Get the raw bytes of a string argument, without copying or decoding them.
+     *
+     * @return A read-only view of the string's bytes.
+     */
+    @Nonnull
+    ByteBuffer getBytes( int index ) throws LuaException;
+
+    @Nonnull
+    UtfString getUtfString( int index ) throws LuaException;
+
+    @Nonnull
+    Map<Object, Object> getTable( int index ) throws LuaException;
+
+    double optNumber( int index, double def ) throws LuaException;
+
+    int optInt( int index, int def ) throws LuaException;
+
+    default double optReal( int index, double def ) throws LuaException
+    {
+        return ArgumentHelper.checkReal( index, optNumber( index, def ) );
+    }
+
+    boolean optBoolean( int index, boolean def ) throws LuaException;
+
+    String optString( int index, String def ) throws LuaException;
+}
@@ -0,0 +1,29 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2017. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package dan200.computercraft.core.apis;
+
+import dan200.computercraft.api.lua.ILuaContext;
+import dan200.computercraft.api.lua.ILuaObject;
+import dan200.computercraft.api.lua.LuaException;
+
+import javax.annotation.Nonnull;
+
+/**
+ * An {@link ILuaObject} which reads its arguments through an {@link IArguments} view, rather than having every
+ * argument converted up front. Lua machines call {@link #callMethod(ILuaContext, int, IArguments)} directly,
+ * while anything else may still use the {@code Object[]} form.
+ */
+public interface ITypedLuaObject extends ILuaObject
+{
+    Object[] callMethod( @Nonnull ILuaContext context, int method, @Nonnull IArguments arguments ) throws LuaException, InterruptedException;
+
+    @Override
+    default Object[] callMethod( @Nonnull ILuaContext context, int method, @Nonnull Object[] arguments ) throws LuaException, InterruptedException
+    {
+        return callMethod( context, method, new ObjectArguments( arguments ) );
+    }
+}
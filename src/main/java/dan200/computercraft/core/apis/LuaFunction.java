@@ -0,0 +1,33 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2017. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package dan200.computercraft.core.apis;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a public method of an {@link IAnnotatedLuaObject} as callable from Lua.
+ *
+ * Parameters are bound by type: an {@link dan200.computercraft.api.lua.ILuaContext} receives the calling context
+ * and an {@link IArguments} receives every argument. Each parameter of any other type reads the next Lua argument,
+ * in order, and may be an {@code int}, {@code double}, {@code boolean}, {@link String}, {@link java.nio.ByteBuffer},
+ * {@link dan200.computercraft.shared.utf.UtfString}, {@link java.util.Map} or {@link Object}. A method may return
+ * nothing, an {@code Object[]} of results, or a single result.
+ *
+ * @see LuaMethods
+ */
+@Retention( RetentionPolicy.RUNTIME )
+@Target( ElementType.METHOD )
+public @interface LuaFunction
+{
+    /**
+     * @return The names this method is exposed to Lua under. Defaults to the name of the Java method.
+     */
+    String[] value() default {};
+}
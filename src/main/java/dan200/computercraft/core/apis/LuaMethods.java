@@ -0,0 +1,252 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2017. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package dan200.computercraft.core.apis;
+
+import dan200.computercraft.api.lua.ILuaContext;
+import dan200.computercraft.api.lua.LuaException;
+import dan200.computercraft.shared.utf.UtfString;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@link LuaFunction}s declared on a class.
+ *
+ * Each method is bound once per class to a {@link MethodHandle} taking the object, the {@link ILuaContext} and the
+ * {@link IArguments}, which reads each argument straight into the type the method asks for. Calls then go directly
+ * to the method, without an index {@code switch} or an {@code Object[]} of arguments.
+ */
+public final class LuaMethods
+{
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodType INVOKER_TYPE = MethodType.methodType( Object[].class, Object.class, ILuaContext.class, IArguments.class );
+    private static final MethodHandle WRAP_RESULT;
+
+    static
+    {
+        try
+        {
+            WRAP_RESULT = LOOKUP.findStatic( LuaMethods.class, "wrapResult", MethodType.methodType( Object[].class, Object.class ) );
+        }
+        catch( ReflectiveOperationException e )
+        {
+            throw new ExceptionInInitializerError( e );
+        }
+    }
+
+    private static final ClassValue<LuaMethods> s_methods = new ClassValue<LuaMethods>()
+    {
+        @Override
+        protected LuaMethods computeValue( Class<?> type )
+        {
+            return new LuaMethods( type );
+        }
+    };
+
+    public static LuaMethods of( @Nonnull Class<?> type )
+    {
+        return s_methods.get( type );
+    }
+
+    private final String[] m_names;
+    private final LuaMethod[] m_methods;
+
+    private LuaMethods( Class<?> type )
+    {
+        List<String> names = new ArrayList<>();
+        List<LuaMethod> methods = new ArrayList<>();
+        for( Method method : type.getMethods() )
+        {
+            LuaFunction annotation = method.getAnnotation( LuaFunction.class );
+            if( annotation == null || method.isBridge() ) continue;
+
+            LuaMethod luaMethod = new LuaMethod( method );
+            String[] aliases = annotation.value().length == 0 ? new String[] { method.getName() } : annotation.value();
+            for( String alias : aliases )
+            {
+                names.add( alias );
+                methods.add( luaMethod );
+            }
+        }
+
+        // getMethods() returns methods in no particular order, so sort them to keep indices the same between runs
+        Integer[] order = new Integer[ names.size() ];
+        for( int i = 0; i < order.length; ++i ) order[ i ] = i;
+        Arrays.sort( order, Comparator.comparing( names::get ) );
+
+        m_names = new String[ order.length ];
+        m_methods = new LuaMethod[ order.length ];
+        for( int i = 0; i < order.length; ++i )
+        {
+            m_names[ i ] = names.get( order[ i ] );
+            m_methods[ i ] = methods.get( order[ i ] );
+        }
+    }
+
+    /**
+     * @return The name of each method. This array is shared, and must not be modified.
+     */
+    @Nonnull
+    public String[] getNames()
+    {
+        return m_names;
+    }
+
+    /**
+     * @return The method with the given index into {@link #getNames()}, or {@code null} if there is none.
+     */
+    @Nullable
+    public LuaMethod getMethod( int index )
+    {
+        return index >= 0 && index < m_methods.length ? m_methods[ index ] : null;
+    }
+
+    public static final class LuaMethod
+    {
+        private final String m_name;
+        private final MethodHandle m_handle;
+
+        private LuaMethod( Method method )
+        {
+            m_name = method.getDeclaringClass().getName() + "." + method.getName();
+            for( Class<?> exception : method.getExceptionTypes() )
+            {
+                if( !LuaException.class.isAssignableFrom( exception ) && !InterruptedException.class.isAssignableFrom( exception ) &&
+                    !RuntimeException.class.isAssignableFrom( exception ) && !Error.class.isAssignableFrom( exception ) )
+                {
+                    throw new IllegalStateException( "Lua function " + m_name + " may throw " + exception.getName() );
+                }
+            }
+
+            try
+            {
+                method.setAccessible( true );
+                m_handle = bind( method );
+            }
+            catch( ReflectiveOperationException | RuntimeException e )
+            {
+                throw new IllegalStateException( "Cannot bind Lua function " + m_name, e );
+            }
+        }
+
+        public Object[] call( @Nonnull Object target, @Nonnull ILuaContext context, @Nonnull IArguments arguments ) throws LuaException, InterruptedException
+        {
+            try
+            {
+                return (Object[]) m_handle.invokeExact( target, context, arguments );
+            }
+            catch( LuaException | InterruptedException | RuntimeException | Error e )
+            {
+                throw e;
+            }
+            catch( Throwable e )
+            {
+                // Ruled out by the constructor, but the compiler doesn't know that.
+                throw new IllegalStateException( e );
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return m_name;
+        }
+    }
+
+    private static MethodHandle bind( Method method ) throws ReflectiveOperationException
+    {
+        MethodHandle handle = LOOKUP.unreflect( method );
+        if( Modifier.isStatic( method.getModifiers() ) )
+        {
+            handle = MethodHandles.dropArguments( handle, 0, Object.class );
+        }
+        else
+        {
+            handle = handle.asType( handle.type().changeParameterType( 0, Object.class ) );
+        }
+
+        // Replace each parameter with the context, or a reader of its argument. reorder maps each parameter
+        // to the invoker's (target, context, arguments).
+        Class<?>[] parameters = method.getParameterTypes();
+        int[] reorder = new int[ parameters.length + 1 ];
+        int arguments = 0;
+        for( Class<?> parameter : parameters )
+        {
+            if( parameter != ILuaContext.class && parameter != IArguments.class ) ++arguments;
+        }
+
+        // The filter added last runs first, so work backwards to read arguments in order, and so fail on the
+        // first bad one.
+        for( int i = parameters.length - 1; i >= 0; --i )
+        {
+            Class<?> parameter = parameters[ i ];
+            if( parameter == ILuaContext.class )
+            {
+                reorder[ i + 1 ] = 1;
+            }
+            else if( parameter == IArguments.class )
+            {
+                reorder[ i + 1 ] = 2;
+            }
+            else
+            {
+                handle = MethodHandles.filterArguments( handle, i + 1, reader( parameter, --arguments ) );
+                reorder[ i + 1 ] = 2;
+            }
+        }
+
+        Class<?> result = method.getReturnType();
+        if( result == void.class )
+        {
+            MethodHandle none = MethodHandles.constant( Object[].class, null );
+            handle = MethodHandles.foldArguments( MethodHandles.dropArguments( none, 0, handle.type().parameterList() ), handle );
+        }
+        else if( Object[].class.isAssignableFrom( result ) )
+        {
+            handle = handle.asType( handle.type().changeReturnType( Object[].class ) );
+        }
+        else
+        {
+            handle = MethodHandles.filterReturnValue( handle.asType( handle.type().changeReturnType( Object.class ) ), WRAP_RESULT );
+        }
+
+        return MethodHandles.permuteArguments( handle, INVOKER_TYPE, reorder );
+    }
+
+    private static MethodHandle reader( Class<?> type, int index ) throws ReflectiveOperationException
+    {
+        String name;
+        if( type == int.class ) name = "getInt";
+        else if( type == double.class ) name = "getNumber";
+        else if( type == boolean.class ) name = "getBoolean";
+        else if( type == String.class ) name = "getString";
+        else if( type == ByteBuffer.class ) name = "getBytes";
+        else if( type == UtfString.class ) name = "getUtfString";
+        else if( type == Map.class ) name = "getTable";
+        else if( type == Object.class ) name = "get";
+        else throw new IllegalArgumentException( "Unsupported parameter type " + type.getName() );
+
+        MethodHandle getter = LOOKUP.findVirtual( IArguments.class, name, MethodType.methodType( type, int.class ) );
+        return MethodHandles.insertArguments( getter, 1, index );
+    }
+
+    private static Object[] wrapResult( Object result )
+    {
+        return new Object[] { result };
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2017. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package dan200.computercraft.core.apis;
+
+import dan200.computercraft.api.lua.LuaException;
+import dan200.computercraft.shared.util.StringUtil;
+import dan200.computercraft.shared.utf.UtfString;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * {@link IArguments} over arguments which have already been converted to Java objects.
+ */
+public class ObjectArguments implements IArguments
+{
+    private final Object[] m_args;
+
+    public ObjectArguments( @Nonnull Object[] args )
+    {
+        m_args = args;
+    }
+
+    @Override
+    public int count()
+    {
+        return m_args.length;
+    }
+
+    @Nullable
+    @Override
+    public Object get( int index )
+    {
+        return index >= 0 && index < m_args.length ? m_args[ index ] : null;
+    }
+
+    @Nonnull
+    @Override
+    public Object[] toArray()
+    {
+        return m_args;
+    }
+
+    @Override
+    public double getNumber( int index ) throws LuaException
+    {
+        return ArgumentHelper.getNumber( m_args, index );
+    }
+
+    @Override
+    public int getInt( int index ) throws LuaException
+    {
+        return ArgumentHelper.getInt( m_args, index );
+    }
+
+    @Override
+    public boolean getBoolean( int index ) throws LuaException
+    {
+        return ArgumentHelper.getBoolean( m_args, index );
+    }
+
+    @Nonnull
+    @Override
+    public String getString( int index ) throws LuaException
+    {
+        return ArgumentHelper.getString( m_args, index );
+    }
+
+    @Nonnull
+    @Override
+    public ByteBuffer getBytes( int index ) throws LuaException
+    {
+        return ByteBuffer.wrap( StringUtil.encodeString( getString( index ) ) ).asReadOnlyBuffer();
+    }
+
+    @Nonnull
+    @Override
+    public UtfString getUtfString( int index ) throws LuaException
+    {
+        return ArgumentHelper.getUtfString( m_args, index );
+    }
+
+    @Nonnull
+    @Override
+    public Map<Object, Object> getTable( int index ) throws LuaException
+    {
+        return ArgumentHelper.getTable( m_args, index );
+    }
+
+    @Override
+    public double optNumber( int index, double def ) throws LuaException
+    {
+        return ArgumentHelper.optNumber( m_args, index, def );
+    }
+
+    @Override
+    public int optInt( int index, int def ) throws LuaException
+    {
+        return ArgumentHelper.optInt( m_args, index, def );
+    }
+
+    @Override
+    public boolean optBoolean( int index, boolean def ) throws LuaException
+    {
+        return ArgumentHelper.optBoolean( m_args, index, def );
+    }
+
+    @Override
+    public String optString( int index, String def ) throws LuaException
+    {
+        return ArgumentHelper.optString( m_args, index, def );
+    }
+}
@@ -6,17 +6,10 @@
 
 package dan200.computercraft.core.apis;
 
-import static dan200.computercraft.core.apis.ArgumentHelper.getBoolean;
 import static dan200.computercraft.core.apis.ArgumentHelper.getInt;
-import static dan200.computercraft.core.apis.ArgumentHelper.getReal;
-import static dan200.computercraft.core.apis.ArgumentHelper.getString;
-import static dan200.computercraft.core.apis.ArgumentHelper.getUtfString;
-
-import javax.annotation.Nonnull;
 
 import org.apache.commons.lang3.ArrayUtils;
 
-import dan200.computercraft.api.lua.ILuaContext;
 import dan200.computercraft.api.lua.LuaException;
 import dan200.computercraft.core.computer.IComputerEnvironment;
 import dan200.computercraft.core.terminal.Terminal;
@@ -25,7 +18,7 @@ import dan200.computercraft.shared.utf.UtfString;
 import dan200.computercraft.shared.util.Palette;
 import dan200.computercraft.shared.util.StringUtil;
 
-public class TermAPI implements ILuaAPI
+public class TermAPI implements ILuaAPI, IAnnotatedLuaObject
 {
     private final Terminal m_terminal;
     private final IComputerEnvironment m_environment;
@@ -59,44 +52,18 @@ public class TermAPI implements ILuaAPI
     {
     }
 
-    @Nonnull
-    @Override
-    public String[] getMethodNames()
+    public static int parseColour( Object[] args ) throws LuaException
     {
-        return new String[] {
-            "write",
-            "scroll",
-            "setCursorPos",
-            "setCursorBlink",
-            "getCursorPos",
-            "getSize",
-            "clear",
-            "clearLine",
-            "setTextColour",
-            "setTextColor",
-            "setBackgroundColour",
-            "setBackgroundColor",
-            "isColour",
-            "isColor",
-            "getTextColour",
-            "getTextColor",
-            "getBackgroundColour",
-            "getBackgroundColor",
-            "blit",
-            "setPaletteColour",
-            "setPaletteColor",
-            "getPaletteColour",
-            "getPaletteColor",
-            "writeutf8",
-            "blitutf8",
-            "getFontName",
-            "setFontName"
-        };
+        return checkColour( getInt( args, 0 ) );
     }
-    
-    public static int parseColour( Object[] args ) throws LuaException
+
+    public static int parseColour( IArguments args ) throws LuaException
+    {
+        return checkColour( args.getInt( 0 ) );
+    }
+
+    private static int checkColour( int colour ) throws LuaException
     {
-        int colour = getInt( args, 0 );
         if( colour <= 0 )
         {
             throw new LuaException( "Colour out of range" );
@@ -125,263 +92,241 @@ public class TermAPI implements ILuaAPI
         }
     }
 
-    @Override
-    public Object[] callMethod( @Nonnull ILuaContext context, int method, @Nonnull Object[] args ) throws LuaException
+    @LuaFunction
+    public void write( Object arg )
     {
-        switch( method )
+        String text;
+        if( arg != null ) {
+            text = arg.toString();
+        } else {
+            text = "";
+        }
+
+        synchronized( m_terminal )
         {
-            case 0:
-            {
-                // write
-                String text;
-                if( args.length > 0 && args[0] != null ) {
-                    text = args[0].toString();
-                } else {
-                    text = "";
-                }
-                
-                synchronized( m_terminal )
-                {
-                    m_terminal.write( text );
-                    m_terminal.setCursorPos( m_terminal.getCursorX() + text.length(), m_terminal.getCursorY() );
-                }
-                return null;
-            }
-            case 1:
-            {
-                // scroll
-                int y = getInt( args, 0 );
-                synchronized( m_terminal )
-                {
-                    m_terminal.scroll(y);
-                }
-                return null;
-            }
-            case 2:
-            {
-                // setCursorPos
-                int x = getInt( args, 0 ) - 1;
-                int y = getInt( args, 1 ) - 1;
-                synchronized( m_terminal )
-                {
-                    m_terminal.setCursorPos( x, y );
-                }
-                return null;
-            }
-            case 3:
-            {
-                // setCursorBlink
-                boolean b = getBoolean( args, 0 );
-                synchronized( m_terminal )
-                {
-                    m_terminal.setCursorBlink( b );
-                }
-                return null;
-            }
-            case 4:
-            {
-                // getCursorPos
-                int x, y;
-                synchronized( m_terminal )
-                {
-                    x = m_terminal.getCursorX();
-                    y = m_terminal.getCursorY();
-                }
-                return new Object[] { x + 1, y + 1 };
-            }
-            case 5:
-            {
-                // getSize
-                int width, height;
-                synchronized( m_terminal )
-                {
-                    width = m_terminal.getWidth();
-                    height = m_terminal.getHeight();
-                }                
-                return new Object[] { width, height };
-            }
-            case 6:
-            {
-                // clear
-                synchronized( m_terminal )
-                {
-                    m_terminal.clear();
-                }
-                return null;
-            }
-            case 7:
-            {
-                // clearLine
-                synchronized( m_terminal )
-                {
-                    m_terminal.clearLine();
-                }
-                return null;
-            }
-            case 8:
-            case 9:
-            {
-                // setTextColour/setTextColor
-                int colour = parseColour( args );
-                synchronized( m_terminal )
-                {
-                    m_terminal.setTextColour( colour );
-                }
-                return null;
-            }
-            case 10:
-            case 11:
-            {
-                // setBackgroundColour/setBackgroundColor
-                int colour = parseColour( args );
-                synchronized( m_terminal )
-                {
-                    m_terminal.setBackgroundColour( colour );
-                }
-                return null;
-            }
-            case 12:
-            case 13:
-            {
-                // isColour/isColor
-                return new Object[] { m_environment.isColour() };
-            }
-            case 14:
-            case 15:
-            {
-                // getTextColour/getTextColor
-                return encodeColour( m_terminal.getTextColour() );
-            }
-            case 16:
-            case 17:
-            {
-                // getBackgroundColour/getBackgroundColor
-                return encodeColour( m_terminal.getBackgroundColour() );
-            }
-            case 18:
-            {
-                // blit
-                String text = getString( args, 0 );
-                String textColour = getString( args, 1 );
-                String backgroundColour = getString( args, 2 );
-                if( textColour.length() != text.length() || backgroundColour.length() != text.length() )
-                {
-                    throw new LuaException( "Arguments must be the same length" );
-                }
-
-                synchronized( m_terminal )
-                {
-                    m_terminal.blit( text, textColour, backgroundColour );
-                    m_terminal.setCursorPos( m_terminal.getCursorX() + text.length(), m_terminal.getCursorY() );
-                }
-                return null;
-            }
-            case 19:
-            case 20:
-            {
-                // setPaletteColour/setPaletteColor
-                int colour = 15 - parseColour( args );
-                if( args.length == 2 )
-                {
-                    int hex = getInt( args, 1 );
-                    double[] rgb = Palette.decodeRGB8( hex );
-                    setColour( m_terminal, colour, rgb[ 0 ], rgb[ 1 ], rgb[ 2 ] );
-                }
-                else
-                {
-                    double r = getReal( args, 1 );
-                    double g = getReal( args, 2 );
-                    double b = getReal( args, 3 );
-                    setColour( m_terminal, colour, r, g, b );
-                }
-                return null;
-            }
-            case 21:
-            case 22:
-            {
-                // getPaletteColour/getPaletteColor
-                int colour = 15 - parseColour( args );
-                synchronized( m_terminal )
-                {
-                    if ( m_terminal.getPalette() != null )
-                    {
-                        return ArrayUtils.toObject( m_terminal.getPalette().getColour( colour ) );
-                    }
-                }
-                return null;
-            }
-            case 23:
+            m_terminal.write( text );
+            m_terminal.setCursorPos( m_terminal.getCursorX() + text.length(), m_terminal.getCursorY() );
+        }
+    }
+
+    @LuaFunction
+    public void scroll( int y )
+    {
+        synchronized( m_terminal )
+        {
+            m_terminal.scroll(y);
+        }
+    }
+
+    @LuaFunction
+    public void setCursorPos( int x, int y )
+    {
+        synchronized( m_terminal )
+        {
+            m_terminal.setCursorPos( x - 1, y - 1 );
+        }
+    }
+
+    @LuaFunction
+    public void setCursorBlink( boolean b )
+    {
+        synchronized( m_terminal )
+        {
+            m_terminal.setCursorBlink( b );
+        }
+    }
+
+    @LuaFunction
+    public Object[] getCursorPos()
+    {
+        int x, y;
+        synchronized( m_terminal )
+        {
+            x = m_terminal.getCursorX();
+            y = m_terminal.getCursorY();
+        }
+        return new Object[] { x + 1, y + 1 };
+    }
+
+    @LuaFunction
+    public Object[] getSize()
+    {
+        int width, height;
+        synchronized( m_terminal )
+        {
+            width = m_terminal.getWidth();
+            height = m_terminal.getHeight();
+        }
+        return new Object[] { width, height };
+    }
+
+    @LuaFunction
+    public void clear()
+    {
+        synchronized( m_terminal )
+        {
+            m_terminal.clear();
+        }
+    }
+
+    @LuaFunction
+    public void clearLine()
+    {
+        synchronized( m_terminal )
+        {
+            m_terminal.clearLine();
+        }
+    }
+
+    @LuaFunction( { "setTextColour", "setTextColor" } )
+    public void setTextColour( IArguments args ) throws LuaException
+    {
+        int colour = parseColour( args );
+        synchronized( m_terminal )
+        {
+            m_terminal.setTextColour( colour );
+        }
+    }
+
+    @LuaFunction( { "setBackgroundColour", "setBackgroundColor" } )
+    public void setBackgroundColour( IArguments args ) throws LuaException
+    {
+        int colour = parseColour( args );
+        synchronized( m_terminal )
+        {
+            m_terminal.setBackgroundColour( colour );
+        }
+    }
+
+    @LuaFunction( { "isColour", "isColor" } )
+    public boolean isColour()
+    {
+        return m_environment.isColour();
+    }
+
+    @LuaFunction( { "getTextColour", "getTextColor" } )
+    public Object[] getTextColour() throws LuaException
+    {
+        return encodeColour( m_terminal.getTextColour() );
+    }
+
+    @LuaFunction( { "getBackgroundColour", "getBackgroundColor" } )
+    public Object[] getBackgroundColour() throws LuaException
+    {
+        return encodeColour( m_terminal.getBackgroundColour() );
+    }
+
+    @LuaFunction
+    public void blit( String text, String textColour, String backgroundColour ) throws LuaException
+    {
+        if( textColour.length() != text.length() || backgroundColour.length() != text.length() )
+        {
+            throw new LuaException( "Arguments must be the same length" );
+        }
+
+        synchronized( m_terminal )
+        {
+            m_terminal.blit( text, textColour, backgroundColour );
+            m_terminal.setCursorPos( m_terminal.getCursorX() + text.length(), m_terminal.getCursorY() );
+        }
+    }
+
+    @LuaFunction( { "setPaletteColour", "setPaletteColor" } )
+    public void setPaletteColour( IArguments args ) throws LuaException
+    {
+        int colour = 15 - parseColour( args );
+        if( args.count() == 2 )
+        {
+            int hex = args.getInt( 1 );
+            double[] rgb = Palette.decodeRGB8( hex );
+            setColour( m_terminal, colour, rgb[ 0 ], rgb[ 1 ], rgb[ 2 ] );
+        }
+        else
+        {
+            double r = args.getReal( 1 );
+            double g = args.getReal( 2 );
+            double b = args.getReal( 3 );
+            setColour( m_terminal, colour, r, g, b );
+        }
+    }
+
+    @LuaFunction( { "getPaletteColour", "getPaletteColor" } )
+    public Object[] getPaletteColour( IArguments args ) throws LuaException
+    {
+        int colour = 15 - parseColour( args );
+        synchronized( m_terminal )
+        {
+            if ( m_terminal.getPalette() != null )
             {
-                // writeutf8
-                if( args.length > 0 && args[0] != null ) {
-                    
-                    synchronized( m_terminal )
-                    {
-                    	try
-                    	{
-	                    	final byte[] bytes = StringUtil.encodeString(args[0].toString());
-	                    	final UtfString text = new UtfString(bytes, 0, -1);
-	                        m_terminal.write( text );
-	                        m_terminal.setCursorPos( m_terminal.getCursorX() + text.length(), m_terminal.getCursorY() );
-                    	}
-                    	catch (UtfException ex)
-                    	{
-                    		throw new LuaException(ex.getMessage());
-                    	}
-                    }
-                } else {
-                	// maybe not needed because it does nothing?
-                	// however the original write method does the same
-                    synchronized( m_terminal )
-                    {
-                        m_terminal.write( "" );
-                        m_terminal.setCursorPos( m_terminal.getCursorX() + 0, m_terminal.getCursorY() );
-                    }
-                }
-                return null;
+                return ArrayUtils.toObject( m_terminal.getPalette().getColour( colour ) );
             }
-            case 24:
+        }
+        return null;
+    }
+
+    @LuaFunction
+    public void writeutf8( Object arg ) throws LuaException
+    {
+        if( arg != null ) {
+
+            synchronized( m_terminal )
             {
-                // blitutf8
-                UtfString text = getUtfString( args, 0 );
-                UtfString textColour = getUtfString( args, 1 );
-                UtfString backgroundColour = getUtfString( args, 2 );
-                if( textColour.length() != text.length() || backgroundColour.length() != text.length() )
-                {
-                    throw new LuaException( "Arguments must be the same length" );
-                }
-
-                synchronized( m_terminal )
-                {
-                    m_terminal.blit( text, textColour, backgroundColour );
+            	try
+            	{
+                	final byte[] bytes = StringUtil.encodeString(arg.toString());
+                	final UtfString text = new UtfString(bytes, 0, -1);
+                    m_terminal.write( text );
                     m_terminal.setCursorPos( m_terminal.getCursorX() + text.length(), m_terminal.getCursorY() );
-                }
-                return null;
+            	}
+            	catch (UtfException ex)
+            	{
+            		throw new LuaException(ex.getMessage());
+            	}
             }
-            case 25:
+        } else {
+        	// maybe not needed because it does nothing?
+        	// however the original write method does the same
+            synchronized( m_terminal )
             {
-            	// getFontName
-            	synchronized( m_terminal )
-                {
-            		return new Object[] { m_terminal.getFontName() };
-                }
-            }
-            case 26:
-            {
-            	// setFontName
-            	synchronized( m_terminal )
-                {
-            		m_terminal.setFontName(getString(args, 0));
-            		return null;
-                }
-            }
-            default:
-            {
-                return null;
+                m_terminal.write( "" );
+                m_terminal.setCursorPos( m_terminal.getCursorX() + 0, m_terminal.getCursorY() );
             }
         }
     }
-    
+
+    @LuaFunction
+    public void blitutf8( UtfString text, UtfString textColour, UtfString backgroundColour ) throws LuaException
+    {
+        if( textColour.length() != text.length() || backgroundColour.length() != text.length() )
+        {
+            throw new LuaException( "Arguments must be the same length" );
+        }
+
+        synchronized( m_terminal )
+        {
+            m_terminal.blit( text, textColour, backgroundColour );
+            m_terminal.setCursorPos( m_terminal.getCursorX() + text.length(), m_terminal.getCursorY() );
+        }
+    }
+
+    @LuaFunction
+    public String getFontName()
+    {
+    	synchronized( m_terminal )
+        {
+    		return m_terminal.getFontName();
+        }
+    }
+
+    @LuaFunction
+    public void setFontName( String name )
+    {
+    	synchronized( m_terminal )
+        {
+    		m_terminal.setFontName( name );
+        }
+    }
+
     private static int getHighestBit( int group )
     {
         int bit = 0;
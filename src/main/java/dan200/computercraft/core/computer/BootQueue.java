@@ -0,0 +1,174 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2017. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package dan200.computercraft.core.computer;
+
+import dan200.computercraft.ComputerCraft;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Limits how many computers may boot at once.
+ *
+ * Booting mounts the computer's filesystem and loads the bios and every ROM API, so when a server starts
+ * or a large area is loaded, hundreds of computers booting together would swamp the computer threads.
+ * Instead, computers wait here until a boot slot is free. Computers closest to a player (see
+ * {@link IComputerEnvironment#getBootPriority()}) are let through first, and the rest in the order they
+ * asked.
+ */
+public class BootQueue
+{
+    private static final Object m_lock = new Object();
+
+    /**
+     * Computers waiting to boot, mapped to the time they started waiting
+     */
+    private static final Map<Computer, Long> m_waiting = new LinkedHashMap<>();
+    private static int m_booting = 0;
+
+    private static long m_booted = 0;
+    private static long m_totalWaitTime = 0;
+    private static long m_longestWaitTime = 0;
+
+    static void queue( Computer computer )
+    {
+        synchronized( m_lock )
+        {
+            m_waiting.putIfAbsent( computer, System.nanoTime() );
+        }
+    }
+
+    static void cancel( Computer computer )
+    {
+        synchronized( m_lock )
+        {
+            m_waiting.remove( computer );
+        }
+    }
+
+    /**
+     * Called once a computer let through by {@link #update()} has finished booting, successfully or not.
+     */
+    static void finished()
+    {
+        synchronized( m_lock )
+        {
+            if( m_booting > 0 ) --m_booting;
+        }
+    }
+
+    /**
+     * Start booting as many waiting computers as there are free slots. Called once a tick from the main thread.
+     */
+    public static void update()
+    {
+        List<Computer> admitted;
+        synchronized( m_lock )
+        {
+            int free = ComputerCraft.max_booting_computers - m_booting;
+            if( free <= 0 || m_waiting.isEmpty() ) return;
+
+            List<Computer> waiting = new ArrayList<>( m_waiting.keySet() );
+            if( waiting.size() > free )
+            {
+                // Working out a priority means looking at every player, so do it once per computer rather than on
+                // every comparison. The sort is stable, so computers with the same priority keep the order they asked in
+                Map<Computer, Double> priorities = new HashMap<>();
+                for( Computer computer : waiting )
+                {
+                    priorities.put( computer, computer.getEnvironment().getBootPriority() );
+                }
+                waiting.sort( Comparator.comparingDouble( priorities::get ) );
+                waiting = waiting.subList( 0, free );
+            }
+
+            admitted = new ArrayList<>( waiting );
+            long now = System.nanoTime();
+            for( Computer computer : admitted )
+            {
+                long waited = now - m_waiting.remove( computer );
+                m_totalWaitTime += waited;
+                m_longestWaitTime = Math.max( m_longestWaitTime, waited );
+                ++m_booted;
+                ++m_booting;
+            }
+        }
+
+        for( Computer computer : admitted )
+        {
+            computer.boot();
+        }
+    }
+
+    /**
+     * Forget every waiting and booting computer, such as when the server stops.
+     */
+    public static void reset()
+    {
+        synchronized( m_lock )
+        {
+            m_waiting.clear();
+            m_booting = 0;
+            m_booted = 0;
+            m_totalWaitTime = 0;
+            m_longestWaitTime = 0;
+        }
+    }
+
+    public static int getWaitingCount()
+    {
+        synchronized( m_lock )
+        {
+            return m_waiting.size();
+        }
+    }
+
+    public static int getBootingCount()
+    {
+        synchronized( m_lock )
+        {
+            return m_booting;
+        }
+    }
+
+    /**
+     * @return The number of computers which have been let through to boot.
+     */
+    public static long getBootedCount()
+    {
+        synchronized( m_lock )
+        {
+            return m_booted;
+        }
+    }
+
+    /**
+     * @return The average time computers have waited before booting, in nanoseconds.
+     */
+    public static long getAverageWaitTime()
+    {
+        synchronized( m_lock )
+        {
+            return m_booted == 0 ? 0 : m_totalWaitTime / m_booted;
+        }
+    }
+
+    /**
+     * @return The longest time a computer has waited before booting, in nanoseconds.
+     */
+    public static long getLongestWaitTime()
+    {
+        synchronized( m_lock )
+        {
+            return m_longestWaitTime;
+        }
+    }
+}
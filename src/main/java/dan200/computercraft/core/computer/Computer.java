@@ -207,6 +207,8 @@ public class Computer
         
     private final IPeripheral[] m_peripherals;
 
+    private final ComputerMetrics m_metrics;
+
     public Computer( IComputerEnvironment environment, Terminal terminal, int id )
     {
         ComputerThread.start();
@@ -245,6 +247,8 @@ public class Computer
             m_peripherals[i] = null;
         }
 
+        m_metrics = new ComputerMetrics();
+
         m_rootMount = null;
         createAPIs();
     }
@@ -264,6 +268,7 @@ public class Computer
     
     public void shutdown()
     {
+        BootQueue.cancel( this );
         stopComputer( false );
     }
     
@@ -286,6 +291,7 @@ public class Computer
         {
             if( m_state != State.Off && m_machine != null )
             {
+                m_metrics.recordAbort( hard );
                 if( hard ) 
                 {
                     m_machine.hardAbort( "Too long without yielding" );
@@ -302,10 +308,21 @@ public class Computer
     {
         synchronized( this )
         {
+            BootQueue.cancel( this );
             stopComputer( false );
         }
     }
 
+    IComputerEnvironment getEnvironment()
+    {
+        return m_environment;
+    }
+
+    public ComputerMetrics getMetrics()
+    {
+        return m_metrics;
+    }
+
     public int getID()
     {
         return m_id;
@@ -350,7 +367,8 @@ public class Computer
             }
             if( m_startRequested && (m_ticksSinceStart < 0 || m_ticksSinceStart > 50) )
             {
-                startComputer();
+                // Wait for a boot slot, rather than starting straight away
+                BootQueue.queue( this );
                 m_startRequested = false;
             }
             
@@ -679,12 +697,21 @@ public class Computer
         }
     }
                                 
+    /**
+     * Called by the {@link BootQueue} once this computer may start booting.
+     */
+    void boot()
+    {
+        startComputer();
+    }
+
     private void startComputer()
     {
         synchronized( this )
         {
             if( m_state != State.Off )
             {
+                BootQueue.finished();
                 return;
             }
             m_state = State.Starting;
@@ -693,7 +720,7 @@ public class Computer
         
         // Turn the computercraft on
         final Computer computer = this;
-        ComputerThread.queueTask( new ITask() {
+        boolean queued = ComputerThread.queueTask( new ITask() {
             @Override
             public Computer getOwner()
             {
@@ -703,53 +730,123 @@ public class Computer
             @Override
             public void execute()
             {
-                synchronized( this )
+                try
                 {
-                    if( m_state != State.Starting )
+                    synchronized( this )
                     {
-                        return;
-                    }
+                        if( m_state != State.Starting )
+                        {
+                            return;
+                        }
                     
-                    // Init terminal                                        
-                    synchronized( m_terminal )
-                    {
-                        m_terminal.reset();
-                    }
+                        // Init terminal                                        
+                        synchronized( m_terminal )
+                        {
+                            m_terminal.reset();
+                        }
                     
-                    // Init filesystem                    
-                    if( !initFileSystem() )
-                    {
-                        // Init failed, so shutdown
-                        m_terminal.reset();
-                        m_terminal.write( "Error mounting lua/rom" );
-                        m_terminal.setCursorPos( 0, 1 );
-                        m_terminal.write( "ComputerCraft may be installed incorrectly" );
+                        // Init filesystem                    
+                        if( !initFileSystem() )
+                        {
+                            // Init failed, so shutdown
+                            m_terminal.reset();
+                            m_terminal.write( "Error mounting lua/rom" );
+                            m_terminal.setCursorPos( 0, 1 );
+                            m_terminal.write( "ComputerCraft may be installed incorrectly" );
 
+                            m_state = State.Running;
+                            stopComputer( false );
+                            return;
+                        }
+                        
+                        // Init lua
+                        initLua();
+                        if( m_machine == null )
+                        {
+                            m_terminal.reset();
+                            m_terminal.write( "Error loading bios.lua" );
+                            m_terminal.setCursorPos( 0, 1 );
+                            m_terminal.write( "ComputerCraft may be installed incorrectly" );
+
+                            // Init failed, so shutdown
+                            m_state = State.Running;
+                            stopComputer( false );
+                            return;
+                        }
+                    
+                        // Start a new state
                         m_state = State.Running;
-                        stopComputer( false );
+                        synchronized( m_machine )
+                        {
+                            m_machine.handleEvent( null, null );
+                            if( m_machine.isPaused() )
+                            {
+                                continueComputer();
+                            }
+                        }
+                    }
+                }
+                finally
+                {
+                    // Even if we failed to boot, let the next computer have our slot
+                    BootQueue.finished();
+                }
+            }
+        }, computer );
+
+        if( !queued )
+        {
+            // Our task queue is full, so the boot task was dropped. Give up our slot and try again later.
+            synchronized( this )
+            {
+                if( m_state == State.Starting )
+                {
+                    m_state = State.Off;
+                    m_startRequested = true;
+                }
+            }
+            BootQueue.finished();
+        }
+    }
+
+    private void continueComputer()
+    {
+        // The machine ran out of time part way through an event, so let other computers have a
+        // turn before carrying on from where it stopped.
+        final Computer computer = this;
+        ComputerThread.queueContinuation( new ITask() {
+            @Override
+            public Computer getOwner()
+            {
+                return computer;
+            }
+
+            @Override
+            public void execute()
+            {
+                synchronized( this )
+                {
+                    if( m_state != State.Running )
+                    {
                         return;
                     }
-                        
-                    // Init lua
-                    initLua();
-                    if( m_machine == null )
+                }
+
+                synchronized( m_machine )
+                {
+                    m_machine.handleEvent( null, null );
+                    if( m_machine.isPaused() )
+                    {
+                        continueComputer();
+                    }
+                    else if( m_machine.isFinished() )
                     {
                         m_terminal.reset();
-                        m_terminal.write( "Error loading bios.lua" );
+                        m_terminal.write( "Error resuming bios.lua" );
                         m_terminal.setCursorPos( 0, 1 );
                         m_terminal.write( "ComputerCraft may be installed incorrectly" );
 
-                        // Init failed, so shutdown
-                        m_state = State.Running;
                         stopComputer( false );
-                        return;
-                    }
-                    
-                    // Start a new state
-                    m_state = State.Running;
-                    synchronized( m_machine )
-                    {
-                        m_machine.handleEvent( null, null );
                     }
                 }
             }
@@ -769,7 +866,7 @@ public class Computer
         
         // Turn the computercraft off
         final Computer computer = this;
-        ComputerThread.queueTask( new ITask() {
+        ITask task = new ITask() {
             @Override
             public Computer getOwner()
             {
@@ -834,17 +931,33 @@ public class Computer
                     }
                 }
             }
-        }, computer );
+        };
+
+        if( !ComputerThread.queueTask( task, computer ) )
+        {
+            // Our task queue is full, which is likely if we're paused in a loop which never yields. Run in place
+            // of the continuation instead: it would do nothing now that we're stopping anyway.
+            ComputerThread.queueContinuation( task, computer );
+        }
     }
     
     public void queueEvent( final String event, final Object[] arguments )
     {
+        ILuaMachine machine;
         synchronized( this )
         {
             if( m_state != State.Running )
             {
                 return;
             }
+            machine = m_machine;
+        }
+
+        // A paused computer is carried on before any queued events are looked at, so a terminate queued behind
+        // it would never be seen by code which doesn't yield. Hand it straight to the machine instead.
+        if( "terminate".equals( event ) && machine != null && machine.terminate() )
+        {
+            return;
         }
             
         final Computer computer = this;
@@ -869,7 +982,11 @@ public class Computer
                 synchronized( m_machine )
                 {
                     m_machine.handleEvent( event, arguments );
-                    if( m_machine.isFinished() )
+                    if( m_machine.isPaused() )
+                    {
+                        continueComputer();
+                    }
+                    else if( m_machine.isFinished() )
                     {
                         m_terminal.reset();
                         m_terminal.write( "Error resuming bios.lua" );
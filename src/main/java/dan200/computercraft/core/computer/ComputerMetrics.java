@@ -0,0 +1,124 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2017. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package dan200.computercraft.core.computer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters tracking how much work a single computer has caused, both on the computer threads and on
+ * the server's main thread. These are updated from several threads, so every counter is atomic.
+ */
+public class ComputerMetrics
+{
+    private final AtomicLong m_luaTime = new AtomicLong();
+    private final AtomicLong m_eventsHandled = new AtomicLong();
+    private final AtomicLong m_eventsDropped = new AtomicLong();
+    private final AtomicLong m_mainThreadTasks = new AtomicLong();
+    private final AtomicLong m_mainThreadTime = new AtomicLong();
+    private final AtomicLong m_softAborts = new AtomicLong();
+    private final AtomicLong m_hardAborts = new AtomicLong();
+
+    void recordEvent( long time )
+    {
+        m_eventsHandled.incrementAndGet();
+        m_luaTime.addAndGet( time );
+    }
+
+    void recordLuaTime( long time )
+    {
+        m_luaTime.addAndGet( time );
+    }
+
+    void recordDroppedEvent()
+    {
+        m_eventsDropped.incrementAndGet();
+    }
+
+    void recordMainThreadTask()
+    {
+        m_mainThreadTasks.incrementAndGet();
+    }
+
+    void recordMainThreadTime( long time )
+    {
+        m_mainThreadTime.addAndGet( time );
+    }
+
+    void recordAbort( boolean hard )
+    {
+        (hard ? m_hardAborts : m_softAborts).incrementAndGet();
+    }
+
+    /**
+     * @return The time spent running this computer's tasks on the computer threads, in nanoseconds.
+     */
+    public long getLuaTime()
+    {
+        return m_luaTime.get();
+    }
+
+    /**
+     * @return The number of events (and other tasks) this computer has processed.
+     */
+    public long getEventsHandled()
+    {
+        return m_eventsHandled.get();
+    }
+
+    /**
+     * @return The number of events which were discarded because this computer's queue was full.
+     */
+    public long getEventsDropped()
+    {
+        return m_eventsDropped.get();
+    }
+
+    /**
+     * @return The number of tasks this computer has issued to the main thread.
+     */
+    public long getMainThreadTasks()
+    {
+        return m_mainThreadTasks.get();
+    }
+
+    /**
+     * @return The time spent executing this computer's tasks on the main thread, in nanoseconds.
+     */
+    public long getMainThreadTime()
+    {
+        return m_mainThreadTime.get();
+    }
+
+    public long getSoftAborts()
+    {
+        return m_softAborts.get();
+    }
+
+    public long getHardAborts()
+    {
+        return m_hardAborts.get();
+    }
+
+    /**
+     * @return The total time this computer has cost, across both the computer and main threads, in nanoseconds.
+     */
+    public long getTotalTime()
+    {
+        return m_luaTime.get() + m_mainThreadTime.get();
+    }
+
+    public void reset()
+    {
+        m_luaTime.set( 0 );
+        m_eventsHandled.set( 0 );
+        m_eventsDropped.set( 0 );
+        m_mainThreadTasks.set( 0 );
+        m_mainThreadTime.set( 0 );
+        m_softAborts.set( 0 );
+        m_hardAborts.set( 0 );
+    }
+}
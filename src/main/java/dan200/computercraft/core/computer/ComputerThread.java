@@ -8,223 +8,472 @@ package dan200.computercraft.core.computer;
 
 import dan200.computercraft.ComputerCraft;
 
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Comparator;
+import java.util.TreeSet;
 import java.util.WeakHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
-    
+import java.util.concurrent.TimeUnit;
+
 public class ComputerThread
 {
+    /**
+     * How long a task may run before the computer is asked to abort, in milliseconds
+     */
+    private static final long SOFT_ABORT_TIMEOUT = 7000;
+
+    /**
+     * How long after a soft abort before the computer is forcibly aborted, in milliseconds
+     */
+    private static final long HARD_ABORT_TIMEOUT = 1500;
+
+    /**
+     * How long after a hard abort before the runner is abandoned and replaced, in milliseconds
+     */
+    private static final long ABANDON_TIMEOUT = 1500;
+
+    /**
+     * How often the monitor thread checks on the runners, in milliseconds
+     */
+    private static final long MONITOR_INTERVAL = 100;
+
     private static final Object m_lock;
-    
-    private static Thread m_thread;
-    private static final WeakHashMap <Object, LinkedBlockingQueue<ITask>> m_computerTasks;
-    private static final ArrayList <LinkedBlockingQueue<ITask>> m_computerTasksActive;
-    private static final ArrayList <LinkedBlockingQueue<ITask>> m_computerTasksPending;
+
+    private static TaskRunner[] m_runners;
+    private static Thread m_monitor;
+
+    private static final WeakHashMap <Object, TaskQueue> m_computerTasks;
+    private static final TreeSet<TaskQueue> m_computerTasksActive;
     private static final Object m_defaultQueue;
-    private static final Object m_monitor;
+    private static long m_minimumVirtualRuntime;
+    private static long m_nextQueueID;
 
     private static boolean m_running;
-    private static boolean m_stopped;
-    
+    private static int m_nextRunnerID;
+
     static
     {
-        m_lock = new Object();    
-        m_thread = null;
+        m_lock = new Object();
+        m_runners = null;
+        m_monitor = null;
         m_computerTasks = new WeakHashMap<>();
-        m_computerTasksPending = new ArrayList<>();
-        m_computerTasksActive = new ArrayList<>();
+        m_computerTasksActive = new TreeSet<>( Comparator
+            .<TaskQueue>comparingLong( queue -> queue.m_virtualRuntime )
+            .thenComparingLong( queue -> queue.m_id ) );
         m_defaultQueue = new Object();
-        m_monitor = new Object();
+        m_minimumVirtualRuntime = 0;
+        m_nextQueueID = 0;
         m_running = false;
-        m_stopped = false;
+        m_nextRunnerID = 0;
     }
-        
+
     public static void start()
     {
         synchronized( m_lock )
         {
             if( m_running )
             {
-                m_stopped = false;
                 return;
             }
-        
-            m_thread = new Thread( () ->
-            {
-                while( true )
-                {
-                    synchronized( m_computerTasksPending )
-                    {
-                        if (!m_computerTasksPending.isEmpty())
-                        {
-                            Iterator<LinkedBlockingQueue<ITask>> it = m_computerTasksPending.iterator();
-                            while(it.hasNext())
-                            {
-                                LinkedBlockingQueue<ITask> queue = it.next();
-                                
-                                if (!m_computerTasksActive.contains(queue))
-                                {
-                                    m_computerTasksActive.add(queue);
-                                }
-                                it.remove();
-                            }
-                            /*
-                            m_computerTasksActive.addAll(m_computerTasksPending); // put any that have been added since
-                            m_computerTasksPending.clear();
-                            */
-                        }
-                    }
-                    
-                    Iterator<LinkedBlockingQueue<ITask>> it = m_computerTasksActive.iterator();
-                    
-                    while (it.hasNext())
-                    {
-                        LinkedBlockingQueue<ITask> queue = it.next();
-                        
-                        if (queue == null || queue.isEmpty()) // we don't need the blocking part of the queue. Null check to ensure it exists due to a weird NPE I got
-                        {
-                            continue;
-                        }
-                        
-                        synchronized( m_lock )
-                        {
-                            if( m_stopped )
-                            {
-                                m_running = false;
-                                m_thread = null;
-                                return;
-                            }
-                        }
-                        
-                        try
-                        {
-                            final ITask task = queue.take();
-
-                            // Create the task
-                            Thread worker = new Thread( () ->
-                            {
-                                try {
-                                    task.execute();
-                                } catch( Throwable e ) {
-                                    ComputerCraft.log.error( "Error running task", e );
-                                }
-                            } );
-                            
-                            // Run the task
-                            worker.setDaemon(true);
-                            worker.start();
-                            worker.join( 7000 );
-                            
-                            if( worker.isAlive() )
-                            {
-                                // Task ran for too long
-                                // Initiate escape plan
-                                Computer computer = task.getOwner();
-                                if( computer != null )
-                                {
-                                    // Step 1: Soft abort
-                                    computer.abort( false );
-                                    worker.join( 1500 );
-                            
-                                    if( worker.isAlive() )
-                                    {
-                                        // Step 2: Hard abort
-                                        computer.abort( true );
-                                        worker.join( 1500 );
-                                    }
-                                }
-                                
-                                // Step 3: abandon
-                                if( worker.isAlive() )
-                                {
-                                    // ComputerCraft.log.warn( "Failed to abort Computer " + computer.getID() + ". Dangling lua thread could cause errors." );
-                                    worker.interrupt();
-                                }
-                            }                
-                        }
-                        catch( InterruptedException e )
-                        {
-                            continue;
-                        }
 
-                        synchronized (queue)
-                        {
-                            if (queue.isEmpty())
-                            {
-                                it.remove();
-                            }
-                        }
-                    }
-                    
-                    while (m_computerTasksActive.isEmpty() && m_computerTasksPending.isEmpty())
-                    {
-                        synchronized (m_monitor)
-                        {
-                            try 
-                            {
-                                m_monitor.wait();
-                            }
-                            catch( InterruptedException e )
-                            {
-                            }
-                        }
-                    }
-                }
-            }, "Computer Dispatch Thread" );
+            m_runners = new TaskRunner[ Math.max( 1, ComputerCraft.computer_threads ) ];
+            for( int i = 0; i < m_runners.length; ++i )
+            {
+                m_runners[ i ] = createRunner();
+            }
 
-            m_thread.setDaemon(true);
-            m_thread.start();
+            m_monitor = new Thread( ComputerThread::monitor, "Computer-Monitor" );
+            m_monitor.setDaemon( true );
+            m_monitor.start();
             m_running = true;
         }
     }
-    
+
     public static void stop()
     {
         synchronized( m_lock )
         {
             if( m_running )
             {
-                m_stopped = true;
-                m_thread.interrupt();
+                m_running = false;
+                for( TaskRunner runner : m_runners )
+                {
+                    runner.m_stopping = true;
+                    runner.m_thread.interrupt();
+                }
+                m_monitor.interrupt();
+                m_runners = null;
+                m_monitor = null;
             }
         }
     }
-    
-    public static void queueTask( ITask _task, Computer computer )
+
+    /**
+     * Queue a task to run on a computer thread.
+     *
+     * @return Whether the task was queued. It is dropped if the computer already has too many tasks waiting.
+     */
+    public static boolean queueTask( ITask _task, Computer computer )
     {
         Object queueObject = computer;
-        
+
         if (queueObject == null)
         {
             queueObject = m_defaultQueue;
         }
-        
-        LinkedBlockingQueue<ITask> queue = m_computerTasks.get(queueObject);
 
-        if (queue == null)
+        synchronized( m_computerTasks )
         {
-            m_computerTasks.put(queueObject, queue = new LinkedBlockingQueue<>( 256 ));
+            TaskQueue queue = m_computerTasks.get( queueObject );
+            if( queue == null )
+            {
+                m_computerTasks.put( queueObject, queue = new TaskQueue( m_nextQueueID++ ) );
+            }
+
+            if( queue.m_tasks.offer( _task ) )
+            {
+                schedule( queue );
+                return true;
+            }
+
+            if( computer != null )
+            {
+                computer.getMetrics().recordDroppedEvent();
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Queue a task which carries on from where a computer's current task was paused. It is run before any
+     * of the computer's other tasks, but only once the computer's turn comes round again.
+     */
+    public static void queueContinuation( ITask task, Computer computer )
+    {
+        synchronized( m_computerTasks )
+        {
+            TaskQueue queue = m_computerTasks.get( computer );
+            if( queue == null )
+            {
+                m_computerTasks.put( computer, queue = new TaskQueue( m_nextQueueID++ ) );
+            }
+
+            queue.m_continuation = task;
+            schedule( queue );
+        }
+    }
+
+    private static void schedule( TaskQueue queue )
+    {
+        // Only hand the queue to a runner if nobody is already working through it. This
+        // ensures each computer's tasks are executed in order, on one thread at a time.
+        if( !queue.m_scheduled )
+        {
+            // A computer which has been idle for a while should not be able to starve
+            // everyone else while it catches up, so bring it level with the slowest runnable
+            // computer.
+            queue.m_scheduled = true;
+            queue.m_virtualRuntime = Math.max( queue.m_virtualRuntime, m_minimumVirtualRuntime );
+            m_computerTasksActive.add( queue );
+            m_computerTasks.notify();
+        }
+    }
+
+    /**
+     * Take the next task to run from a queue, preferring one which carries on a paused task.
+     */
+    private static ITask nextTask( TaskQueue queue )
+    {
+        synchronized( m_computerTasks )
+        {
+            ITask task = queue.m_continuation;
+            if( task != null )
+            {
+                queue.m_continuation = null;
+                return task;
+            }
+        }
+        return queue.m_tasks.poll();
+    }
+
+    /**
+     * @return The number of tasks waiting to be run for this computer.
+     */
+    public static int getPendingTaskCount( Computer computer )
+    {
+        synchronized( m_computerTasks )
+        {
+            TaskQueue queue = m_computerTasks.get( computer );
+            return queue == null ? 0 : queue.m_tasks.size();
+        }
+    }
+
+    /**
+     * @return The number of tasks waiting to be run across all computers.
+     */
+    public static int getPendingTaskCount()
+    {
+        synchronized( m_computerTasks )
+        {
+            int count = 0;
+            for( TaskQueue queue : m_computerTasks.values() )
+            {
+                count += queue.m_tasks.size();
+            }
+            return count;
         }
-        
-        synchronized ( m_computerTasksPending )
+    }
+
+    /**
+     * Wait for a computer with pending work, picking the one which has used the least time.
+     */
+    private static TaskQueue takeQueue() throws InterruptedException
+    {
+        synchronized( m_computerTasks )
         {
-            if( queue.offer( _task ) )
+            while( m_computerTasksActive.isEmpty() )
             {
-                if( !m_computerTasksPending.contains( queue ) )
+                m_computerTasks.wait();
+            }
+
+            TaskQueue queue = m_computerTasksActive.pollFirst();
+            m_minimumVirtualRuntime = Math.max( m_minimumVirtualRuntime, queue.m_virtualRuntime );
+            return queue;
+        }
+    }
+
+    /**
+     * Called by a runner once it has finished its turn on a queue. Returns the queue to the
+     * active set if it still has work, where it is ordered by the time it has used so far.
+     */
+    private static void finishQueue( TaskQueue queue )
+    {
+        synchronized( m_computerTasks )
+        {
+            if( queue.m_tasks.isEmpty() && queue.m_continuation == null )
+            {
+                queue.m_scheduled = false;
+            }
+            else
+            {
+                m_computerTasksActive.add( queue );
+                m_computerTasks.notify();
+            }
+        }
+    }
+
+    private static TaskRunner createRunner()
+    {
+        TaskRunner runner = new TaskRunner();
+        runner.m_thread = new Thread( runner, "Computer-Runner-" + (++m_nextRunnerID) );
+        runner.m_thread.setDaemon( true );
+        runner.m_thread.start();
+        return runner;
+    }
+
+    /**
+     * Watches over the runners, escalating from a soft abort to a hard abort and finally
+     * abandoning the runner if a task refuses to finish.
+     */
+    private static void monitor()
+    {
+        while( true )
+        {
+            try
+            {
+                Thread.sleep( MONITOR_INTERVAL );
+            }
+            catch( InterruptedException e )
+            {
+                return;
+            }
+
+            synchronized( m_lock )
+            {
+                if( m_monitor != Thread.currentThread() )
                 {
-                    m_computerTasksPending.add( queue );
+                    return;
+                }
+
+                for( int i = 0; i < m_runners.length; ++i )
+                {
+                    TaskRunner runner = m_runners[ i ];
+                    if( runner.checkTimeout() )
+                    {
+                        // Step 3: abandon. The old thread is left to die on its own, and a fresh
+                        // runner takes its place so the pool does not shrink.
+                        m_runners[ i ] = createRunner();
+                    }
                 }
             }
-            else
+        }
+    }
+
+    /**
+     * The pending tasks for a single computer, along with how much time it has spent running
+     */
+    private static final class TaskQueue
+    {
+        private final long m_id;
+        private final LinkedBlockingQueue<ITask> m_tasks;
+
+        /**
+         * Total time spent executing this queue's tasks, in nanoseconds. Only modified by the runner
+         * which currently holds the queue, so never while it is in the active set.
+         */
+        private long m_virtualRuntime;
+        private boolean m_scheduled;
+        private ITask m_continuation;
+
+        private TaskQueue( long id )
+        {
+            m_id = id;
+            m_tasks = new LinkedBlockingQueue<>( 256 );
+            m_virtualRuntime = 0;
+            m_scheduled = false;
+            m_continuation = null;
+        }
+    }
+
+    private static final class TaskRunner implements Runnable
+    {
+        private Thread m_thread;
+
+        private TaskQueue m_queue;
+        private ITask m_task;
+        private long m_taskStart;
+        private int m_abortStage;
+        private boolean m_abandoned;
+        private volatile boolean m_stopping;
+
+        @Override
+        public void run()
+        {
+            while( true )
             {
-                //System.out.println( "Event queue overflow" );
+                TaskQueue queue;
+                try
+                {
+                    queue = takeQueue();
+                }
+                catch( InterruptedException e )
+                {
+                    return;
+                }
+
+                if( m_stopping )
+                {
+                    // Picked up a queue just as we were stopped: give it back untouched
+                    finishQueue( queue );
+                    return;
+                }
+
+                // Keep working through this computer's tasks until it runs out of work or uses up
+                // its time slice, at which point it goes back to wait behind computers which have
+                // used less time.
+                long budget = TimeUnit.MILLISECONDS.toNanos( ComputerCraft.computer_time_slice );
+                long sliceStart = System.nanoTime();
+                while( true )
+                {
+                    ITask task = nextTask( queue );
+                    if( task == null )
+                    {
+                        break;
+                    }
+
+                    // Each slice of a paused task is timed on its own, so a computer which pauses is never
+                    // aborted for running too long. It can still be terminated or shut down.
+                    long start = System.nanoTime();
+                    synchronized( this )
+                    {
+                        m_queue = queue;
+                        m_task = task;
+                        m_taskStart = start;
+                        m_abortStage = 0;
+                    }
+
+                    try
+                    {
+                        task.execute();
+                    }
+                    catch( Throwable e )
+                    {
+                        ComputerCraft.log.error( "Error running task", e );
+                    }
+
+                    long end = System.nanoTime();
+                    synchronized( this )
+                    {
+                        m_queue = null;
+                        m_task = null;
+                        if( m_abandoned )
+                        {
+                            // The monitor has already handed our queue back and replaced us
+                            return;
+                        }
+                    }
+
+                    queue.m_virtualRuntime += end - start;
+                    Computer owner = task.getOwner();
+                    if( owner != null ) owner.getMetrics().recordEvent( end - start );
+                    if( m_stopping || end - sliceStart >= budget )
+                    {
+                        break;
+                    }
+                }
+
+                finishQueue( queue );
+                if( m_stopping )
+                {
+                    return;
+                }
             }
         }
-        
-        synchronized (m_monitor)
+
+        /**
+         * Check whether the current task has run for too long, aborting the owning computer if so.
+         *
+         * @return Whether this runner was abandoned and should be replaced.
+         */
+        private synchronized boolean checkTimeout()
         {
-            m_monitor.notify();
+            if( m_task == null )
+            {
+                return false;
+            }
+
+            long elapsed = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - m_taskStart );
+            Computer computer = m_task.getOwner();
+            if( m_abortStage == 0 && elapsed >= SOFT_ABORT_TIMEOUT )
+            {
+                // Step 1: Soft abort
+                m_abortStage = 1;
+                if( computer != null ) computer.abort( false );
+            }
+            else if( m_abortStage == 1 && elapsed >= SOFT_ABORT_TIMEOUT + HARD_ABORT_TIMEOUT )
+            {
+                // Step 2: Hard abort
+                m_abortStage = 2;
+                if( computer != null ) computer.abort( true );
+            }
+            else if( m_abortStage == 2 && elapsed >= SOFT_ABORT_TIMEOUT + HARD_ABORT_TIMEOUT + ABANDON_TIMEOUT )
+            {
+                if( computer != null )
+                {
+                    ComputerCraft.log.warn( "Failed to abort Computer " + computer.getID() + ". Dangling lua thread could cause errors." );
+                }
+                m_abandoned = true;
+                m_thread.interrupt();
+
+                long time = System.nanoTime() - m_taskStart;
+                TaskQueue queue = m_queue;
+                queue.m_virtualRuntime += time;
+                if( computer != null ) computer.getMetrics().recordLuaTime( time );
+                m_queue = null;
+                m_task = null;
+                finishQueue( queue );
+                return true;
+            }
+            return false;
         }
     }
 }
@@ -22,4 +22,15 @@ public interface IComputerEnvironment
     IWritableMount createSaveDirMount( String subPath, long capacity );
     IMount createResourceMount( String domain, String subPath );
     InputStream createResourceFile( String domain, String subPath );
+
+    /**
+     * How urgently this computer should boot when several are waiting to. Computers with a lower priority
+     * boot first.
+     *
+     * @see BootQueue
+     */
+    default double getBootPriority()
+    {
+        return 0;
+    }
 }
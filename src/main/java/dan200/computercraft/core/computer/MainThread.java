@@ -6,14 +6,24 @@
 
 package dan200.computercraft.core.computer;
 
-import java.util.LinkedList;
+import dan200.computercraft.ComputerCraft;
+
+import java.util.ArrayDeque;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
 
 public class MainThread
 {
     private static final int MAX_TASKS_PER_TICK = 1000;
     private static final int MAX_TASKS_TOTAL = 50000;
 
-    private static final LinkedList<ITask> m_outstandingTasks = new LinkedList<>();
+    private static final Object m_lock = new Object();
+    private static final WeakHashMap<Object, TaskQueue> m_computerTasks = new WeakHashMap<>();
+    private static final ArrayDeque<TaskQueue> m_computerTasksActive = new ArrayDeque<>();
+    private static final Object m_defaultQueue = new Object();
+    private static int m_totalTasks = 0;
+    private static long m_currentTick = 0;
+
     private static final Object m_nextUnusedTaskIDLock = new Object();
     private static long m_nextUnusedTaskID = 0;
 
@@ -25,41 +35,160 @@ public class MainThread
         }
     }
 
+    /**
+     * @return The number of tasks waiting to be run on the main thread.
+     */
+    public static int getPendingTaskCount()
+    {
+        synchronized( m_lock )
+        {
+            return m_totalTasks;
+        }
+    }
+
     public static boolean queueTask( ITask task )
     {
-        synchronized( m_outstandingTasks )
+        Computer owner = task.getOwner();
+        Object queueObject = owner == null ? m_defaultQueue : owner;
+
+        synchronized( m_lock )
         {
-            if( m_outstandingTasks.size() < MAX_TASKS_TOTAL )
+            if( m_totalTasks >= MAX_TASKS_TOTAL )
+            {
+                return false;
+            }
+
+            TaskQueue queue = m_computerTasks.get( queueObject );
+            if( queue == null )
+            {
+                m_computerTasks.put( queueObject, queue = new TaskQueue( m_currentTick ) );
+            }
+
+            queue.m_tasks.addLast( task );
+            ++m_totalTasks;
+            if( !queue.m_scheduled )
             {
-                m_outstandingTasks.addLast( task );
-                return true;
+                queue.m_scheduled = true;
+                m_computerTasksActive.addLast( queue );
             }
         }
-        return false;
+
+        if( owner != null ) owner.getMetrics().recordMainThreadTask();
+        return true;
     }
 
+    /**
+     * Run queued tasks until this tick's time budget is used up. Computers take turns running one task
+     * each, and a computer may not spend more than its own allowance per tick: any time it overspends
+     * is paid back out of later ticks. Anything left over is run on the next tick.
+     */
     public static void executePendingTasks()
     {
+        long budget = TimeUnit.MILLISECONDS.toNanos( ComputerCraft.main_thread_time );
+        long start = System.nanoTime();
+        long tick;
+        synchronized( m_lock )
+        {
+            tick = ++m_currentTick;
+        }
+
         int tasksThisTick = 0;
-        while( tasksThisTick < MAX_TASKS_PER_TICK )
+        int skipped = 0;
+        while( tasksThisTick < MAX_TASKS_PER_TICK && System.nanoTime() - start < budget )
         {
-            ITask task = null;
-            synchronized( m_outstandingTasks )
+            TaskQueue queue;
+            synchronized( m_lock )
             {
-                if( m_outstandingTasks.size() > 0 )
+                // Stop once we've been round every computer without finding one which may still run
+                if( m_computerTasksActive.isEmpty() || skipped >= m_computerTasksActive.size() )
                 {
-                    task = m_outstandingTasks.removeFirst();
+                    break;
                 }
+                queue = m_computerTasksActive.removeFirst();
             }
-            if( task != null )
+
+            queue.refill( tick );
+            if( queue.m_allowance <= 0 )
+            {
+                synchronized( m_lock )
+                {
+                    m_computerTasksActive.addLast( queue );
+                }
+                ++skipped;
+                continue;
+            }
+
+            ITask task;
+            synchronized( m_lock )
+            {
+                task = queue.m_tasks.removeFirst();
+                --m_totalTasks;
+            }
+
+            long taskStart = System.nanoTime();
+            try
             {
                 task.execute();
-                ++tasksThisTick;
             }
-            else
+            catch( Throwable e )
+            {
+                ComputerCraft.log.error( "Error running main thread task", e );
+            }
+            long time = System.nanoTime() - taskStart;
+
+            queue.m_allowance -= time;
+            Computer owner = task.getOwner();
+            if( owner != null ) owner.getMetrics().recordMainThreadTime( time );
+
+            synchronized( m_lock )
             {
-                break;
+                if( queue.m_tasks.isEmpty() )
+                {
+                    queue.m_scheduled = false;
+                }
+                else
+                {
+                    m_computerTasksActive.addLast( queue );
+                }
             }
+
+            ++tasksThisTick;
+            skipped = 0;
+        }
+    }
+
+    /**
+     * The main thread tasks for a single computer, along with how much time it may spend this tick
+     */
+    private static final class TaskQueue
+    {
+        private final ArrayDeque<ITask> m_tasks;
+        private boolean m_scheduled;
+
+        /**
+         * The time this computer may still spend this tick, in nanoseconds. This goes negative when a
+         * task overruns, in which case the computer must wait until it has been paid back. Only
+         * accessed from the main thread.
+         */
+        private long m_allowance;
+        private long m_lastRefill;
+
+        private TaskQueue( long tick )
+        {
+            m_tasks = new ArrayDeque<>();
+            m_scheduled = false;
+            m_allowance = 0;
+            m_lastRefill = tick;
+        }
+
+        private void refill( long tick )
+        {
+            if( tick == m_lastRefill ) return;
+
+            long perTick = TimeUnit.MILLISECONDS.toNanos( ComputerCraft.main_thread_computer_time );
+            long ticks = tick - m_lastRefill;
+            m_allowance = Math.min( perTick, m_allowance + ticks * perTick );
+            m_lastRefill = tick;
         }
     }
 }
@@ -0,0 +1,320 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2017. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package dan200.computercraft.core.lua;
+
+import dan200.computercraft.ComputerCraft;
+import org.luaj.vm2.LoadState;
+import org.luaj.vm2.LuaClosure;
+import org.luaj.vm2.LuaFunction;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Prototype;
+import org.luaj.vm2.compiler.LuaC;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A compiler which remembers the {@link Prototype}s it has produced for the bios and ROM, so that every
+ * computer booting them only pays to compile them once per server. Anything else a computer loads is
+ * handed straight to {@link LuaC}, as it is rarely loaded more than once.
+ *
+ * The bios names ROM chunks by their full path ({@code @rom/...}), which is how we tell them apart, though
+ * they are still compiled under their file name alone so error messages are unchanged. Chunks are keyed by
+ * their contents as well as their name, as {@code load} only ever sees a string and anyone may call it with
+ * a ROM name. A prototype's code and constants are never modified once compiled, so one can be shared
+ * between any number of closures on any number of computers, even ones running at the same time.
+ *
+ * The only parts of a prototype which do change belong to the JIT (see {@link LuaClosure#jit}):
+ * {@link Prototype#hotness} counts how often it has been run, and {@link Prototype#compiled} is set once
+ * it is hot, and cleared again if its class is evicted. The count is incremented without any locking, so
+ * computers running the same prototype at once may lose some of each other's counts. That only delays
+ * compiling it: a count can only pass the threshold by reaching it, which is what hands it to the JIT,
+ * and the JIT copes with being handed the same prototype twice. {@code compiled} is volatile and only
+ * ever holds a class which has already been linked, so a computer either interprets the prototype or runs
+ * a working class.
+ *
+ * Release builds also contain the bios and ROM compiled into Java classes (see the compileRom task in
+ * build.gradle), listed in {@code luajc.index} against their chunk name and the SHA-1 of their source.
+ * A ROM chunk whose contents still match is loaded from its class rather than being interpreted.
+ */
+public class CachingCompiler implements LoadState.LuaCompiler
+{
+    public static final CachingCompiler instance = new CachingCompiler();
+
+    /**
+     * The total size of source code to keep compiled, in bytes
+     */
+    private static final int MAX_CACHE_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * Chunks larger than this are rarely loaded more than once, so are not worth holding on to
+     */
+    private static final int MAX_CHUNK_SIZE = 512 * 1024;
+
+    private static final String BIOS_CHUNK = "bios.lua";
+    private static final String ROM_CHUNK_PREFIX = "@rom/";
+
+    private static final String PRECOMPILED_INDEX = "/assets/computercraft/lua/luajc.index";
+
+    private final Map<ChunkKey, Prototype> m_prototypes = new LinkedHashMap<>( 64, 0.75f, true );
+    private int m_size = 0;
+
+    private Map<String, PrecompiledChunk> m_precompiled;
+
+    private CachingCompiler()
+    {
+    }
+
+    /**
+     * Install the compiler, replacing the default {@link LuaC} one.
+     */
+    public static void install()
+    {
+        LoadState.compiler = instance;
+    }
+
+    @Override
+    public LuaFunction load( InputStream stream, String name, LuaValue env ) throws IOException
+    {
+        if( !isRomChunk( name ) ) return LuaC.instance.load( stream, name, env );
+
+        byte[] contents = readFully( stream );
+
+        LuaFunction function = loadPrecompiled( name, contents, env );
+        if( function != null ) return function;
+
+        return new LuaClosure( compile( contents, name ), env );
+    }
+
+    public Prototype compile( InputStream stream, String name ) throws IOException
+    {
+        if( !isRomChunk( name ) ) return LuaC.compile( stream, name );
+        return compile( readFully( stream ), name );
+    }
+
+    private Prototype compile( byte[] contents, String name ) throws IOException
+    {
+        // Binary chunks are cheap to load and not something we want to keep around.
+        if( contents.length > MAX_CHUNK_SIZE || (contents.length > 0 && contents[ 0 ] == '\033') )
+        {
+            return LuaC.compile( new ByteArrayInputStream( contents ), sourceName( name ) );
+        }
+
+        ChunkKey key = new ChunkKey( name, contents );
+        synchronized( m_prototypes )
+        {
+            Prototype prototype = m_prototypes.get( key );
+            if( prototype != null ) return prototype;
+        }
+
+        // Compile outside the lock, so computers don't queue up behind each other. Should two compile
+        // the same chunk at once, the duplicate is simply thrown away.
+        Prototype prototype = LuaC.compile( new ByteArrayInputStream( contents ), sourceName( name ) );
+        synchronized( m_prototypes )
+        {
+            if( m_prototypes.put( key, prototype ) == null )
+            {
+                m_size += contents.length;
+                Iterator<ChunkKey> keys = m_prototypes.keySet().iterator();
+                while( m_size > MAX_CACHE_SIZE && keys.hasNext() )
+                {
+                    m_size -= keys.next().m_contents.length;
+                    keys.remove();
+                }
+            }
+        }
+        return prototype;
+    }
+
+    private static boolean isRomChunk( String name )
+    {
+        return name.startsWith( ROM_CHUNK_PREFIX ) || name.equals( BIOS_CHUNK );
+    }
+
+    /**
+     * The name a ROM chunk is compiled under: its file name, as the bios names every other file it loads.
+     */
+    private static String sourceName( String name )
+    {
+        return name.startsWith( ROM_CHUNK_PREFIX ) ? name.substring( name.lastIndexOf( '/' ) + 1 ) : name;
+    }
+
+    private LuaFunction loadPrecompiled( String name, byte[] contents, LuaValue env )
+    {
+        if( !ComputerCraft.precompiled_rom ) return null;
+
+        Map<String, PrecompiledChunk> precompiled = getPrecompiled();
+        if( precompiled.isEmpty() ) return null;
+
+        PrecompiledChunk chunk;
+        synchronized( precompiled )
+        {
+            chunk = precompiled.get( name );
+        }
+        if( chunk == null ) return null;
+
+        // A resource pack may have replaced this file since it was compiled
+        if( !chunk.m_hash.equals( sha1( contents ) ) ) return null;
+
+        String className = chunk.m_className;
+
+        try
+        {
+            LuaFunction function = (LuaFunction) Class.forName( className, true, CachingCompiler.class.getClassLoader() ).newInstance();
+            function.setfenv( env );
+            return function;
+        }
+        catch( ReflectiveOperationException | LinkageError | ClassCastException e )
+        {
+            // Fall back to interpreting this chunk from now on
+            ComputerCraft.log.error( "Cannot load precompiled chunk " + className, e );
+            synchronized( precompiled )
+            {
+                precompiled.remove( name );
+            }
+            return null;
+        }
+    }
+
+    private synchronized Map<String, PrecompiledChunk> getPrecompiled()
+    {
+        if( m_precompiled != null ) return m_precompiled;
+
+        Map<String, PrecompiledChunk> precompiled = new HashMap<>();
+        InputStream stream = CachingCompiler.class.getResourceAsStream( PRECOMPILED_INDEX );
+        if( stream != null )
+        {
+            try( BufferedReader reader = new BufferedReader( new InputStreamReader( stream, StandardCharsets.UTF_8 ) ) )
+            {
+                String line;
+                while( (line = reader.readLine()) != null )
+                {
+                    // <chunk name> <sha1> <class name>. Chunk names may contain spaces, the others may not.
+                    int classSpace = line.lastIndexOf( ' ' );
+                    int hashSpace = classSpace > 0 ? line.lastIndexOf( ' ', classSpace - 1 ) : -1;
+                    if( hashSpace > 0 )
+                    {
+                        precompiled.put( line.substring( 0, hashSpace ), new PrecompiledChunk(
+                            line.substring( hashSpace + 1, classSpace ), line.substring( classSpace + 1 )
+                        ) );
+                    }
+                }
+            }
+            catch( IOException e )
+            {
+                ComputerCraft.log.error( "Cannot read " + PRECOMPILED_INDEX, e );
+                precompiled.clear();
+            }
+        }
+
+        return m_precompiled = precompiled.isEmpty() ? Collections.emptyMap() : precompiled;
+    }
+
+    private static String sha1( byte[] contents )
+    {
+        byte[] digest;
+        try
+        {
+            digest = MessageDigest.getInstance( "SHA-1" ).digest( contents );
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( e );
+        }
+
+        char[] hex = new char[ digest.length * 2 ];
+        for( int i = 0; i < digest.length; ++i )
+        {
+            hex[ i * 2 ] = Character.forDigit( (digest[ i ] >> 4) & 0xF, 16 );
+            hex[ i * 2 + 1 ] = Character.forDigit( digest[ i ] & 0xF, 16 );
+        }
+        return new String( hex );
+    }
+
+    public void clear()
+    {
+        synchronized( m_prototypes )
+        {
+            m_prototypes.clear();
+            m_size = 0;
+        }
+    }
+
+    private static byte[] readFully( InputStream stream ) throws IOException
+    {
+        if( stream instanceof ByteArrayInputStream )
+        {
+            byte[] contents = new byte[ stream.available() ];
+            int read = stream.read( contents, 0, contents.length );
+            return read == contents.length ? contents : Arrays.copyOf( contents, Math.max( read, 0 ) );
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[ 4096 ];
+        int read;
+        while( (read = stream.read( buffer )) >= 0 )
+        {
+            output.write( buffer, 0, read );
+        }
+        return output.toByteArray();
+    }
+
+    private static final class PrecompiledChunk
+    {
+        private final String m_hash;
+        private final String m_className;
+
+        private PrecompiledChunk( String hash, String className )
+        {
+            m_hash = hash;
+            m_className = className;
+        }
+    }
+
+    private static final class ChunkKey
+    {
+        private final String m_name;
+        private final byte[] m_contents;
+        private final int m_hash;
+
+        private ChunkKey( String name, byte[] contents )
+        {
+            m_name = name;
+            m_contents = contents;
+            m_hash = 31 * name.hashCode() + Arrays.hashCode( contents );
+        }
+
+        @Override
+        public boolean equals( Object other )
+        {
+            if( this == other ) return true;
+            if( !(other instanceof ChunkKey) ) return false;
+
+            ChunkKey key = (ChunkKey) other;
+            return m_hash == key.m_hash && m_name.equals( key.m_name ) && Arrays.equals( m_contents, key.m_contents );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return m_hash;
+        }
+    }
+}
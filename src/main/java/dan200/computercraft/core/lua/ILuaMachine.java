@@ -19,10 +19,31 @@ public interface ILuaMachine
     void softAbort( String abortMessage );
     void hardAbort( String abortMessage );
     
+    /**
+     * Write out the machine's state, so it may be carried on later with {@link #restoreState(InputStream)}
+     * rather than rebooting.
+     *
+     * @return Whether the state was saved. Machines which cannot save their state return false.
+     */
     boolean saveState( OutputStream output );
     boolean restoreState( InputStream input );
     
     boolean isFinished();
-    
+
+    /**
+     * Whether the last call to {@link #handleEvent(String, Object[])} ran out of time and was paused part way
+     * through. A paused machine must be carried on with {@code handleEvent( null, null )} before it is sent any
+     * other events.
+     */
+    boolean isPaused();
+
+    /**
+     * Interrupt a paused machine's code with a "Terminated" error once it is carried on, rather than waiting for it
+     * to yield and pull a terminate event. Unlike the other methods, this may be called while the machine is running.
+     *
+     * @return Whether the machine was paused. If not, the caller should queue a terminate event as normal.
+     */
+    boolean terminate();
+
     void unload();
 }
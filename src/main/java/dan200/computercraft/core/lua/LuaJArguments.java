@@ -0,0 +1,219 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2017. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package dan200.computercraft.core.lua;
+
+import dan200.computercraft.api.lua.LuaException;
+import dan200.computercraft.core.apis.ArgumentHelper;
+import dan200.computercraft.core.apis.IArguments;
+import dan200.computercraft.shared.utf.UtfException;
+import dan200.computercraft.shared.utf.UtfString;
+import org.luaj.vm2.LuaString;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * {@link IArguments} which reads straight from LuaJ's {@link Varargs}, only converting the arguments which are
+ * asked for.
+ */
+class LuaJArguments implements IArguments
+{
+    private final LuaJLuaMachine m_machine;
+    private final Varargs m_args;
+    private final int m_offset;
+
+    LuaJArguments( LuaJLuaMachine machine, Varargs args, int offset )
+    {
+        m_machine = machine;
+        m_args = args;
+        m_offset = offset;
+    }
+
+    private LuaValue arg( int index )
+    {
+        return index >= 0 ? m_args.arg( index + m_offset ) : LuaValue.NIL;
+    }
+
+    /**
+     * The name of a value's type, as {@link ArgumentHelper#getType(Object)} would give for its converted form
+     */
+    private static String getType( LuaValue value )
+    {
+        switch( value.type() )
+        {
+            case LuaValue.TBOOLEAN:
+                return "boolean";
+            case LuaValue.TINT:
+            case LuaValue.TNUMBER:
+                return "number";
+            case LuaValue.TSTRING:
+                return "string";
+            case LuaValue.TTABLE:
+                return "table";
+            default:
+                // Anything else can't be converted, so is passed as null
+                return "nil";
+        }
+    }
+
+    /**
+     * Whether a value would be converted to null, and so treated as missing
+     */
+    private static boolean isNil( LuaValue value )
+    {
+        switch( value.type() )
+        {
+            case LuaValue.TBOOLEAN:
+            case LuaValue.TINT:
+            case LuaValue.TNUMBER:
+            case LuaValue.TSTRING:
+            case LuaValue.TTABLE:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    private static boolean isNumber( LuaValue value )
+    {
+        int type = value.type();
+        return type == LuaValue.TNUMBER || type == LuaValue.TINT;
+    }
+
+    @Override
+    public int count()
+    {
+        return Math.max( 0, m_args.narg() - m_offset + 1 );
+    }
+
+    @Nullable
+    @Override
+    public Object get( int index )
+    {
+        return m_machine.toObject( arg( index ) );
+    }
+
+    @Nonnull
+    @Override
+    public Object[] toArray()
+    {
+        return m_machine.toObjects( m_args, m_offset );
+    }
+
+    @Override
+    public double getNumber( int index ) throws LuaException
+    {
+        LuaValue value = arg( index );
+        if( !isNumber( value ) ) throw ArgumentHelper.badArgument( index, "number", getType( value ) );
+        return value.todouble();
+    }
+
+    @Override
+    public int getInt( int index ) throws LuaException
+    {
+        LuaValue value = arg( index );
+        if( !isNumber( value ) ) throw ArgumentHelper.badArgument( index, "number", getType( value ) );
+        return (int) (long) value.todouble();
+    }
+
+    @Override
+    public boolean getBoolean( int index ) throws LuaException
+    {
+        LuaValue value = arg( index );
+        if( value.type() != LuaValue.TBOOLEAN ) throw ArgumentHelper.badArgument( index, "boolean", getType( value ) );
+        return value.toboolean();
+    }
+
+    private LuaString checkString( int index ) throws LuaException
+    {
+        LuaValue value = arg( index );
+        if( value.type() != LuaValue.TSTRING ) throw ArgumentHelper.badArgument( index, "string", getType( value ) );
+        return (LuaString) value;
+    }
+
+    @Nonnull
+    @Override
+    public String getString( int index ) throws LuaException
+    {
+        return checkString( index ).tojstring();
+    }
+
+    @Nonnull
+    @Override
+    public ByteBuffer getBytes( int index ) throws LuaException
+    {
+        LuaString string = checkString( index );
+        return ByteBuffer.wrap( string.m_bytes, string.m_offset, string.m_length ).asReadOnlyBuffer();
+    }
+
+    @Nonnull
+    @Override
+    public UtfString getUtfString( int index ) throws LuaException
+    {
+        // LuaJ maps each byte to a single char, so the raw bytes are exactly what encodeString would give
+        LuaString string = checkString( index );
+        try
+        {
+            return new UtfString( Arrays.copyOfRange( string.m_bytes, string.m_offset, string.m_offset + string.m_length ), 0, -1 );
+        }
+        catch( UtfException e )
+        {
+            throw new LuaException( e.getMessage() );
+        }
+    }
+
+    @SuppressWarnings( "unchecked" )
+    @Nonnull
+    @Override
+    public Map<Object, Object> getTable( int index ) throws LuaException
+    {
+        LuaValue value = arg( index );
+        if( value.type() != LuaValue.TTABLE ) throw ArgumentHelper.badArgument( index, "table", getType( value ) );
+        return (Map<Object, Object>) m_machine.toObject( value );
+    }
+
+    @Override
+    public double optNumber( int index, double def ) throws LuaException
+    {
+        LuaValue value = arg( index );
+        if( isNil( value ) ) return def;
+        if( !isNumber( value ) ) throw ArgumentHelper.badArgument( index, "number", getType( value ) );
+        return value.todouble();
+    }
+
+    @Override
+    public int optInt( int index, int def ) throws LuaException
+    {
+        LuaValue value = arg( index );
+        if( isNil( value ) ) return def;
+        if( !isNumber( value ) ) throw ArgumentHelper.badArgument( index, "number", getType( value ) );
+        return (int) (long) value.todouble();
+    }
+
+    @Override
+    public boolean optBoolean( int index, boolean def ) throws LuaException
+    {
+        LuaValue value = arg( index );
+        if( isNil( value ) ) return def;
+        if( value.type() != LuaValue.TBOOLEAN ) throw ArgumentHelper.badArgument( index, "boolean", getType( value ) );
+        return value.toboolean();
+    }
+
+    @Override
+    public String optString( int index, String def ) throws LuaException
+    {
+        LuaValue value = arg( index );
+        if( isNil( value ) ) return def;
+        if( value.type() != LuaValue.TSTRING ) throw ArgumentHelper.badArgument( index, "string", getType( value ) );
+        return value.tojstring();
+    }
+}
@@ -12,16 +12,20 @@ import dan200.computercraft.api.lua.ILuaObject;
 import dan200.computercraft.api.lua.ILuaTask;
 import dan200.computercraft.api.lua.LuaException;
 import dan200.computercraft.core.apis.ILuaAPI;
+import dan200.computercraft.core.apis.IAnnotatedLuaObject;
+import dan200.computercraft.core.apis.ITypedLuaObject;
+import dan200.computercraft.core.apis.LuaFunction;
+import dan200.computercraft.core.apis.LuaMethods;
 import dan200.computercraft.core.apis.Utf8API;
 import dan200.computercraft.core.computer.Computer;
 import dan200.computercraft.core.computer.ITask;
 import dan200.computercraft.core.computer.MainThread;
 
 import org.luaj.vm2.*;
-import org.luaj.vm2.lib.OneArgFunction;
 import org.luaj.vm2.lib.VarArgFunction;
-import org.luaj.vm2.lib.ZeroArgFunction;
+import org.luaj.vm2.lib.jse.JseCoroutineExecutor;
 import org.luaj.vm2.lib.jse.JsePlatform;
+import org.luaj.vm2.luajc.LuaJit;
 
 import javax.annotation.Nonnull;
 import java.io.*;
@@ -29,9 +33,24 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public class LuaJLuaMachine implements ILuaMachine
 {
+    static
+    {
+        // Reuse coroutine threads (or use virtual threads where the JVM supports them well) rather
+        // than starting a new OS thread for every coroutine.
+        LuaThread.executor = JseCoroutineExecutor.best();
+        ComputerCraft.log.info( "Using " + LuaThread.executor + " coroutine executor" );
+    }
+
+    /**
+     * Compiles hot functions for every computer. Compiled classes are shared between computers, as
+     * they're attached to the (possibly shared) prototype.
+     */
+    private static final LuaJit s_jit = new LuaJit( 32, 64 );
+
     private Computer m_computer;
 
     private LuaValue m_globals;
@@ -44,51 +63,34 @@ public class LuaJLuaMachine implements ILuaMachine
     private LuaValue m_mainRoutine;
     private String m_eventFilter;
     private String m_softAbortMessage;
-    private String m_hardAbortMessage;
+    private volatile String m_hardAbortMessage;
+    private volatile boolean m_paused;
+    private volatile boolean m_terminatePending;
+    private final Object m_terminateLock = new Object();
+    private boolean m_canPause;
+    private long m_pauseDeadline;
+    private final AbortBudget m_budget = new AbortBudget();
 
     private Map<Object, LuaValue> m_valuesInProgress;
     private Map<LuaValue, Object> m_objectsInProgress;
+    private final Map<Class<?>, MethodTable> m_methodTables = new HashMap<>();
 
     public LuaJLuaMachine( Computer computer )
     {
         m_computer = computer;
 
         // Create an environment to run in
-        m_globals = JsePlatform.debugGlobals();
+        m_globals = JsePlatform.standardGlobals();
+
+        // Creating the globals installs the default compiler, so switch back to the shared cache
+        CachingCompiler.install();
+
+        LuaClosure.jit = ComputerCraft.lua_jit ? s_jit : null;
+        if( LuaClosure.jit == null ) s_jit.clear();
         m_loadString = m_globals.get("loadstring");
         m_assert = m_globals.get("assert");
 
         LuaValue coroutine = m_globals.get("coroutine");
-        final LuaValue native_coroutine_create = coroutine.get("create");
-        
-        LuaValue debug = m_globals.get("debug");
-        final LuaValue debug_sethook = debug.get("sethook");
-        
-        coroutine.set("create", new OneArgFunction() {
-            @Override
-            public LuaValue call( LuaValue value )
-            {
-                final LuaThread thread = native_coroutine_create.call( value ).checkthread();
-                debug_sethook.invoke( new LuaValue[] {
-                    thread,
-                    new ZeroArgFunction() {
-                        @Override
-                        public LuaValue call() {
-                            String hardAbortMessage = m_hardAbortMessage;
-                            if( hardAbortMessage != null )
-                            {
-                                LuaThread.yield(LuaValue.NIL);
-                            }
-                            return LuaValue.NIL;
-                        }
-                    },
-                    LuaValue.NIL,
-                    LuaValue.valueOf(100000)
-                } );
-                return thread;                
-            }
-        });
-        
         m_coroutine_create = coroutine.get("create");
         m_coroutine_resume = coroutine.get("resume");
         m_coroutine_yield = coroutine.get("yield");
@@ -123,6 +125,8 @@ public class LuaJLuaMachine implements ILuaMachine
 
         m_softAbortMessage = null;
         m_hardAbortMessage = null;
+        m_paused = false;
+        m_terminatePending = false;
         
         // utf support
         final Utf8API string = new Utf8API(m_computer.getAPIEnvironment());
@@ -188,6 +192,9 @@ public class LuaJLuaMachine implements ILuaMachine
                 toValue( biosText ), toValue( "bios.lua" )
             ));
             m_mainRoutine = m_coroutine_create.call( program );
+
+            // Coroutines inherit their creator's budget, so this covers everything the computer runs
+            ((LuaThread)m_mainRoutine).setBudget( m_budget );
         }
         catch( LuaError e )
         {
@@ -202,6 +209,24 @@ public class LuaJLuaMachine implements ILuaMachine
     
     @Override
     public void handleEvent( String eventName, Object[] arguments )
+    {
+        resume( eventName, arguments );
+
+        // A terminate which arrived while we were paused, but which the code finished without ever noticing.
+        // Deliver it as a normal event instead, so it isn't lost.
+        boolean terminate;
+        synchronized( m_terminateLock )
+        {
+            terminate = !m_paused && m_terminatePending;
+            if( terminate ) m_terminatePending = false;
+        }
+        if( terminate )
+        {
+            resume( "terminate", null );
+        }
+    }
+
+    private void resume( String eventName, Object[] arguments )
     {
         if( m_mainRoutine == null )
         {
@@ -212,6 +237,10 @@ public class LuaJLuaMachine implements ILuaMachine
         {
             return;
         }
+
+        boolean paused = false;
+        m_canPause = ComputerCraft.pause_computers;
+        m_pauseDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( ComputerCraft.computer_time_slice );
         
         try
         {            
@@ -233,6 +262,11 @@ public class LuaJLuaMachine implements ILuaMachine
             {
                 throw new LuaError( m_hardAbortMessage );
             }
+            else if( results == LuaThread.PAUSED )
+            {
+                // Ran out of time: we'll be resumed from where we left off once other computers have had a turn
+                paused = true;
+            }
             else if( results.arg1().checkboolean() == false )
             {
                 throw new LuaError( results.arg(2).checkstring().toString() );
@@ -263,8 +297,17 @@ public class LuaJLuaMachine implements ILuaMachine
         }
         finally
         {
-            m_softAbortMessage = null;
-            m_hardAbortMessage = null;
+            synchronized( m_terminateLock )
+            {
+                m_paused = paused;
+            }
+
+            // We're still part way through this event, so any abort must carry over to when we're resumed
+            if( !paused )
+            {
+                m_softAbortMessage = null;
+                m_hardAbortMessage = null;
+            }
         }
     }
 
@@ -281,6 +324,12 @@ public class LuaJLuaMachine implements ILuaMachine
         m_hardAbortMessage = abortMessage;
     }
 
+    /**
+     * Not supported. Tables, closures and upvalues could be written out, but LuaJ runs each coroutine on its
+     * own Java thread, so a suspended coroutine's call stack lives on that thread's stack where we can't get
+     * at it. As the bios is always suspended inside a coroutine while waiting for events, no running
+     * computer could ever be saved, and so computers are still rebooted when they are reloaded.
+     */
     @Override
     public boolean saveState( OutputStream output )
     {
@@ -299,6 +348,23 @@ public class LuaJLuaMachine implements ILuaMachine
         return (m_mainRoutine == null);
     }
     
+    @Override
+    public boolean isPaused()
+    {
+        return m_paused;
+    }
+
+    @Override
+    public boolean terminate()
+    {
+        synchronized( m_terminateLock )
+        {
+            if( !m_paused ) return false;
+            m_terminatePending = true;
+            return true;
+        }
+    }
+
     @Override
     public void unload()
     {
@@ -326,186 +392,292 @@ public class LuaJLuaMachine implements ILuaMachine
         }
     }
     
-    private LuaTable wrapLuaObject( ILuaObject object )
+    /**
+     * Checks for a hard abort every {@link #INTERVAL} instructions, and pauses the computer once it has
+     * run past the end of its time slice. This is far cheaper than a debug hook, which would have the
+     * interpreter do extra work on every instruction.
+     */
+    private final class AbortBudget extends LuaThread.Budget
     {
-        LuaTable table = new LuaTable();
-        String[] methods = object.getMethodNames();
-        for(int i=0; i<methods.length; ++i )
-        {
-            if( methods[i] != null )
-            {
-                final int method = i;
-                final ILuaObject apiObject = object;
-                final String methodName = methods[i];
-                table.set( methodName, new VarArgFunction() {
-                    @Override
-                    public Varargs invoke( Varargs _args )
+        private static final int INTERVAL = 10000;
+
+        private AbortBudget()
+        {
+            super( INTERVAL );
+        }
+
+        @Override
+        protected void exhausted()
+        {
+            remaining = INTERVAL;
+            if( m_hardAbortMessage != null )
+            {
+                // Yield all the way back up to handleEvent, which will then kill the computer
+                LuaThread.yield( LuaValue.NIL );
+            }
+            else if( m_terminatePending )
+            {
+                // Ctrl+T while we were paused. Raise it in the running code, just as os.pullEvent would have.
+                m_terminatePending = false;
+                throw new LuaError( "Terminated", 0 );
+            }
+            else if( m_canPause && System.nanoTime() - m_pauseDeadline >= 0 )
+            {
+                LuaThread.pause();
+            }
+        }
+    }
+
+    /**
+     * The context passed to every method call. It only refers to the machine, so one is shared by all calls.
+     */
+    private final ILuaContext m_context = new ILuaContext() {
+        @Nonnull
+        @Override
+        public Object[] pullEvent( String filter ) throws LuaException, InterruptedException
+        {
+            Object[] results = pullEventRaw( filter );
+            if( results.length >= 1 && results[0].equals( "terminate" ) )
+            {
+                throw new LuaException( "Terminated", 0 );
+            }
+            return results;
+        }
+
+        @Nonnull
+        @Override
+        public Object[] pullEventRaw( String filter ) throws InterruptedException
+        {
+            return yield( new Object[] { filter } );
+        }
+
+        @Nonnull
+        @Override
+        public Object[] yield( Object[] yieldArgs ) throws InterruptedException
+        {
+            try
+            {
+                LuaValue[] yieldValues = toValues( yieldArgs, 0 );
+                Varargs results = m_coroutine_yield.invoke( LuaValue.varargsOf( yieldValues ) );
+                return toObjects( results, 1 );
+            }
+            catch( OrphanedThread e )
+            {
+                throw new InterruptedException();
+            }
+        }
+
+        @Override
+        public long issueMainThreadTask( @Nonnull final ILuaTask task ) throws LuaException
+        {
+            // Issue command
+            final long taskID = MainThread.getUniqueTaskID();
+            final ITask iTask = new ITask()
+            {
+                @Override
+                public Computer getOwner()
+                {
+                    return m_computer;
+                }
+
+                @Override
+                public void execute()
+                {
+                    try
                     {
-                        tryAbort();
-                        Object[] arguments = toObjects( _args, 1 );
-                        Object[] results;
-                        try
+                        Object[] results = task.execute();
+                        if( results != null )
                         {
-                            results = apiObject.callMethod( new ILuaContext() {
-                                @Nonnull
-                                @Override
-                                public Object[] pullEvent( String filter ) throws LuaException, InterruptedException
-                                {
-                                    Object[] results = pullEventRaw( filter );
-                                    if( results.length >= 1 && results[0].equals( "terminate" ) )
-                                    {
-                                        throw new LuaException( "Terminated", 0 );
-                                    }
-                                    return results;
-                                }
-                                
-                                @Nonnull
-                                @Override
-                                public Object[] pullEventRaw( String filter ) throws InterruptedException
-                                {
-                                    return yield( new Object[] { filter } );
-                                }
-                                
-                                @Nonnull
-                                @Override
-                                public Object[] yield( Object[] yieldArgs ) throws InterruptedException
-                                {
-                                    try
-                                    {
-                                        LuaValue[] yieldValues = toValues( yieldArgs, 0 );
-                                        Varargs results = m_coroutine_yield.invoke( LuaValue.varargsOf( yieldValues ) );
-                                        return toObjects( results, 1 );
-                                    }
-                                    catch( OrphanedThread e )
-                                    {
-                                        throw new InterruptedException();
-                                    }
-                                }
-
-                                @Override
-                                public long issueMainThreadTask( @Nonnull final ILuaTask task ) throws LuaException
-                                {
-                                    // Issue command
-                                    final long taskID = MainThread.getUniqueTaskID();
-                                    final ITask iTask = new ITask()
-                                    {
-                                        @Override
-                                        public Computer getOwner()
-                                        {
-                                            return m_computer;
-                                        }
-
-                                        @Override
-                                        public void execute()
-                                        {
-                                            try
-                                            {
-                                                Object[] results = task.execute();
-                                                if( results != null )
-                                                {
-                                                    Object[] eventArguments = new Object[ results.length + 2 ];
-                                                    eventArguments[ 0 ] = taskID;
-                                                    eventArguments[ 1 ] = true;
-                                                    System.arraycopy( results, 0, eventArguments, 2, results.length );
-                                                    m_computer.queueEvent( "task_complete", eventArguments );
-                                                }
-                                                else
-                                                {
-                                                    m_computer.queueEvent( "task_complete", new Object[] { taskID, true } );
-                                                }
-                                            }
-                                            catch( LuaException e )
-                                            {
-                                                m_computer.queueEvent( "task_complete", new Object[] {
-                                                    taskID, false, e.getMessage()
-                                                } );
-                                            }
-                                            catch( Throwable t )
-                                            {
-                                                if( ComputerCraft.logPeripheralErrors )
-                                                {
-                                                    ComputerCraft.log.error( "Error running task", t );
-                                                }
-                                                m_computer.queueEvent( "task_complete", new Object[] {
-                                                    taskID, false, "Java Exception Thrown: " + t.toString()
-                                                } );
-                                            }
-                                        }
-                                    };
-                                    if( MainThread.queueTask( iTask ) )
-                                    {
-                                        return taskID;
-                                    }
-                                    else
-                                    {
-                                        throw new LuaException( "Task limit exceeded" );
-                                    }
-                                }
-
-                                @Override
-                                public Object[] executeMainThreadTask( @Nonnull final ILuaTask task ) throws LuaException, InterruptedException
-                                {
-                                    // Issue task
-                                    final long taskID = issueMainThreadTask( task );
-
-                                    // Wait for response
-                                    while( true )
-                                    {
-                                        Object[] response = pullEvent( "task_complete" );
-                                        if( response.length >= 3 && response[ 1 ] instanceof Number && response[ 2 ] instanceof Boolean )
-                                        {
-                                            if( ( (Number)response[ 1 ] ).intValue() == taskID )
-                                            {
-                                                Object[] returnValues = new Object[ response.length - 3 ];
-                                                if( (Boolean)response[ 2 ] )
-                                                {
-                                                    // Extract the return values from the event and return them
-                                                    System.arraycopy( response, 3, returnValues, 0, returnValues.length );
-                                                    return returnValues;
-                                                }
-                                                else
-                                                {
-                                                    // Extract the error message from the event and raise it
-                                                    if( response.length >= 4 && response[3] instanceof String )
-                                                    {
-                                                        throw new LuaException( (String)response[ 3 ] );
-                                                    }
-                                                    else
-                                                    {
-                                                        throw new LuaException();
-                                                    }
-                                                }
-                                            }
-                                        }
-                                    }
-
-                                }
-                            }, method, arguments );
+                            Object[] eventArguments = new Object[ results.length + 2 ];
+                            eventArguments[ 0 ] = taskID;
+                            eventArguments[ 1 ] = true;
+                            System.arraycopy( results, 0, eventArguments, 2, results.length );
+                            m_computer.queueEvent( "task_complete", eventArguments );
                         }
-                        catch( InterruptedException e )
+                        else
                         {
-                            throw new OrphanedThread();
-                        } 
-                        catch( LuaException e )
+                            m_computer.queueEvent( "task_complete", new Object[] { taskID, true } );
+                        }
+                    }
+                    catch( LuaException e )
+                    {
+                        m_computer.queueEvent( "task_complete", new Object[] {
+                            taskID, false, e.getMessage()
+                        } );
+                    }
+                    catch( Throwable t )
+                    {
+                        if( ComputerCraft.logPeripheralErrors )
                         {
-                            throw new LuaError( e.getMessage(), e.getLevel() );
+                            ComputerCraft.log.error( "Error running task", t );
                         }
-                        catch( Throwable t )
+                        m_computer.queueEvent( "task_complete", new Object[] {
+                            taskID, false, "Java Exception Thrown: " + t.toString()
+                        } );
+                    }
+                }
+            };
+            if( MainThread.queueTask( iTask ) )
+            {
+                return taskID;
+            }
+            else
+            {
+                throw new LuaException( "Task limit exceeded" );
+            }
+        }
+
+        @Override
+        public Object[] executeMainThreadTask( @Nonnull final ILuaTask task ) throws LuaException, InterruptedException
+        {
+            // Issue task
+            final long taskID = issueMainThreadTask( task );
+
+            // Wait for response
+            while( true )
+            {
+                Object[] response = pullEvent( "task_complete" );
+                if( response.length >= 3 && response[ 1 ] instanceof Number && response[ 2 ] instanceof Boolean )
+                {
+                    if( ( (Number)response[ 1 ] ).intValue() == taskID )
+                    {
+                        Object[] returnValues = new Object[ response.length - 3 ];
+                        if( (Boolean)response[ 2 ] )
+                        {
+                            // Extract the return values from the event and return them
+                            System.arraycopy( response, 3, returnValues, 0, returnValues.length );
+                            return returnValues;
+                        }
+                        else
                         {
-                            if( ComputerCraft.logPeripheralErrors )
+                            // Extract the error message from the event and raise it
+                            if( response.length >= 4 && response[3] instanceof String )
+                            {
+                                throw new LuaException( (String)response[ 3 ] );
+                            }
+                            else
                             {
-                                ComputerCraft.log.error( "Error calling " + methodName + " on " + apiObject, t );
+                                throw new LuaException();
                             }
-                            throw new LuaError( "Java Exception Thrown: " + t.toString(), 0 );
                         }
-                        return LuaValue.varargsOf( toValues( results, 0 ) );
                     }
-                } );
+                }
+            }
+
+        }
+    };
+
+    private LuaTable wrapLuaObject( ILuaObject object )
+    {
+        String[] names = object.getMethodNames();
+        MethodTable methods = m_methodTables.get( object.getClass() );
+        if( methods == null || !Arrays.equals( methods.m_names, names ) )
+        {
+            methods = new MethodTable( names, object instanceof IAnnotatedLuaObject ? LuaMethods.of( object.getClass() ) : null );
+            m_methodTables.put( object.getClass(), methods );
+        }
+
+        LuaTable table = new LuaTable( 0, methods.m_count );
+        for( int i = 0; i < methods.m_keys.length; ++i )
+        {
+            if( methods.m_keys[i] != null )
+            {
+                table.rawset( methods.m_keys[i], new BoundMethod( object, i, methods.m_names[i], methods.m_functions[i] ) );
             }
         }
         return table;
     }
 
+    /**
+     * The method names of one class of {@link ILuaObject}, converted to Lua strings once per machine rather
+     * than every time an instance (a file handle, an HTTP response...) is passed to Lua. For an
+     * {@link IAnnotatedLuaObject}, this also holds the {@link LuaFunction} each name calls.
+     */
+    private static final class MethodTable
+    {
+        final String[] m_names;
+        final LuaString[] m_keys;
+        final LuaMethods.LuaMethod[] m_functions;
+        final int m_count;
+
+        MethodTable( String[] names, LuaMethods functions )
+        {
+            m_names = names.clone();
+            m_keys = new LuaString[names.length];
+            m_functions = new LuaMethods.LuaMethod[names.length];
+            int count = 0;
+            for( int i = 0; i < names.length; ++i )
+            {
+                if( names[i] != null )
+                {
+                    m_keys[i] = LuaString.valueOf( names[i] );
+                    if( functions != null ) m_functions[i] = functions.getMethod( i );
+                    ++count;
+                }
+            }
+            m_count = count;
+        }
+    }
+
+    /**
+     * A method of a wrapped object. Lua code calls these as {@code handle.readLine()}, without passing the
+     * object, so each instance needs its own functions. They're kept as small as possible instead.
+     */
+    private final class BoundMethod extends VarArgFunction
+    {
+        private final ILuaObject m_object;
+        private final int m_method;
+        private final String m_name;
+        private final LuaMethods.LuaMethod m_function;
+
+        BoundMethod( ILuaObject object, int method, String name, LuaMethods.LuaMethod function )
+        {
+            m_object = object;
+            m_method = method;
+            m_name = name;
+            m_function = function;
+        }
+
+        @Override
+        public Varargs invoke( Varargs _args )
+        {
+            tryAbort();
+            Object[] results;
+            try
+            {
+                if( m_function != null )
+                {
+                    results = m_function.call( m_object, m_context, new LuaJArguments( LuaJLuaMachine.this, _args, 1 ) );
+                }
+                else if( m_object instanceof ITypedLuaObject )
+                {
+                    results = ((ITypedLuaObject) m_object).callMethod( m_context, m_method, new LuaJArguments( LuaJLuaMachine.this, _args, 1 ) );
+                }
+                else
+                {
+                    results = m_object.callMethod( m_context, m_method, toObjects( _args, 1 ) );
+                }
+            }
+            catch( InterruptedException e )
+            {
+                throw new OrphanedThread();
+            }
+            catch( LuaException e )
+            {
+                throw new LuaError( e.getMessage(), e.getLevel() );
+            }
+            catch( Throwable t )
+            {
+                if( ComputerCraft.logPeripheralErrors )
+                {
+                    ComputerCraft.log.error( "Error calling " + m_name + " on " + m_object, t );
+                }
+                throw new LuaError( "Java Exception Thrown: " + t.toString(), 0 );
+            }
+            return toVarargs( results );
+        }
+    }
+
     private LuaValue toValue( Object object )
     {
         if( object == null )
@@ -582,6 +754,14 @@ public class LuaJLuaMachine implements ILuaMachine
         }        
     }
 
+    private Varargs toVarargs( Object[] objects )
+    {
+        // Most methods return nothing or a single value, neither of which need an array
+        if( objects == null || objects.length == 0 ) return LuaValue.NONE;
+        if( objects.length == 1 ) return toValue( objects[ 0 ] );
+        return LuaValue.varargsOf( toValues( objects, 0 ) );
+    }
+
     private LuaValue[] toValues( Object[] objects, int leaveEmpty )
     {
         if( objects == null || objects.length == 0 ) 
@@ -603,7 +783,7 @@ public class LuaJLuaMachine implements ILuaMachine
         return values;
     }
 
-    private Object toObject( LuaValue value )
+    Object toObject( LuaValue value )
     {
         switch( value.type() )
         {
@@ -682,7 +862,7 @@ public class LuaJLuaMachine implements ILuaMachine
         }        
     }
     
-    private Object[] toObjects( Varargs values, int startIdx )
+    Object[] toObjects( Varargs values, int startIdx )
     {
         int count = values.narg();
         Object[] objects = new Object[ count - startIdx + 1 ];
@@ -0,0 +1,223 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2017. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package dan200.computercraft.core.terminal;
+
+import dan200.computercraft.shared.utf.UtfString;
+
+import java.util.Arrays;
+
+/**
+ * The text and background colours of a line of a terminal, packed into a single byte per cell. The
+ * text colour is stored in the low nibble and the background colour in the high nibble.
+ */
+public class ColourBuffer
+{
+    private static final String base16 = "0123456789abcdef";
+
+    /**
+     * The colour used for text colour characters which aren't valid hex digits
+     */
+    public static final int DEFAULT_TEXT_COLOUR = 0;
+
+    /**
+     * The colour used for background colour characters which aren't valid hex digits
+     */
+    public static final int DEFAULT_BACKGROUND_COLOUR = 15;
+
+    private final byte[] m_colours;
+
+    public ColourBuffer( int textColour, int backgroundColour, int length )
+    {
+        m_colours = new byte[ length ];
+        fill( textColour, backgroundColour );
+    }
+
+    public ColourBuffer( String textColour, String backgroundColour )
+    {
+        this( DEFAULT_TEXT_COLOUR, DEFAULT_BACKGROUND_COLOUR, Math.max( textColour.length(), backgroundColour.length() ) );
+        writeTextColour( textColour, 0 );
+        writeBackgroundColour( backgroundColour, 0 );
+    }
+
+    public ColourBuffer( ColourBuffer colours )
+    {
+        m_colours = colours.m_colours.clone();
+    }
+
+    public int length()
+    {
+        return m_colours.length;
+    }
+
+    public int getTextColour( int i )
+    {
+        return m_colours[ i ] & 0xF;
+    }
+
+    public int getBackgroundColour( int i )
+    {
+        return (m_colours[ i ] >> 4) & 0xF;
+    }
+
+    /**
+     * Get the packed colour of a cell, for serialising the buffer.
+     *
+     * @param i The cell to get the colour of.
+     * @return The background colour in the high nibble and the text colour in the low nibble.
+     */
+    public byte getPacked( int i )
+    {
+        return m_colours[ i ];
+    }
+
+    public void setPacked( int i, byte colour )
+    {
+        if( i >= 0 && i < m_colours.length )
+        {
+            m_colours[ i ] = colour;
+        }
+    }
+
+    public static byte pack( int textColour, int backgroundColour )
+    {
+        return (byte) ((backgroundColour & 0xF) << 4 | (textColour & 0xF));
+    }
+
+    public void fill( int textColour, int backgroundColour )
+    {
+        Arrays.fill( m_colours, pack( textColour, backgroundColour ) );
+    }
+
+    public void fill( int textColour, int backgroundColour, int start, int end )
+    {
+        start = Math.max( start, 0 );
+        end = Math.min( end, m_colours.length );
+        if( start < end )
+        {
+            Arrays.fill( m_colours, start, end, pack( textColour, backgroundColour ) );
+        }
+    }
+
+    public void fillPacked( byte colour, int start, int end )
+    {
+        start = Math.max( start, 0 );
+        end = Math.min( end, m_colours.length );
+        if( start < end )
+        {
+            Arrays.fill( m_colours, start, end, colour );
+        }
+    }
+
+    public void write( ColourBuffer colours )
+    {
+        System.arraycopy( colours.m_colours, 0, m_colours, 0, Math.min( colours.m_colours.length, m_colours.length ) );
+    }
+
+    public void write( byte[] colours )
+    {
+        System.arraycopy( colours, 0, m_colours, 0, Math.min( colours.length, m_colours.length ) );
+    }
+
+    /**
+     * Set both colours of a run of cells from hex strings, as used by {@code term.blit}.
+     */
+    public void blit( String textColour, String backgroundColour, int start )
+    {
+        int end = Math.min( m_colours.length, start + Math.min( textColour.length(), backgroundColour.length() ) );
+        for( int i = Math.max( start, 0 ); i < end; ++i )
+        {
+            m_colours[ i ] = pack(
+                parseColour( textColour.charAt( i - start ), DEFAULT_TEXT_COLOUR ),
+                parseColour( backgroundColour.charAt( i - start ), DEFAULT_BACKGROUND_COLOUR )
+            );
+        }
+    }
+
+    public void blit( UtfString textColour, UtfString backgroundColour, int start )
+    {
+        int end = Math.min( m_colours.length, start + Math.min( textColour.length(), backgroundColour.length() ) );
+        for( int i = Math.max( start, 0 ); i < end; ++i )
+        {
+            m_colours[ i ] = pack(
+                parseColour( textColour.charAt( i - start ), DEFAULT_TEXT_COLOUR ),
+                parseColour( backgroundColour.charAt( i - start ), DEFAULT_BACKGROUND_COLOUR )
+            );
+        }
+    }
+
+    public void writeTextColour( String textColour, int start )
+    {
+        int end = Math.min( m_colours.length, start + textColour.length() );
+        for( int i = Math.max( start, 0 ); i < end; ++i )
+        {
+            int colour = parseColour( textColour.charAt( i - start ), DEFAULT_TEXT_COLOUR );
+            m_colours[ i ] = (byte) ((m_colours[ i ] & 0xF0) | colour);
+        }
+    }
+
+    public void writeTextColour( UtfString textColour, int start )
+    {
+        int end = Math.min( m_colours.length, start + textColour.length() );
+        for( int i = Math.max( start, 0 ); i < end; ++i )
+        {
+            int colour = parseColour( textColour.charAt( i - start ), DEFAULT_TEXT_COLOUR );
+            m_colours[ i ] = (byte) ((m_colours[ i ] & 0xF0) | colour);
+        }
+    }
+
+    public void writeBackgroundColour( String backgroundColour, int start )
+    {
+        int end = Math.min( m_colours.length, start + backgroundColour.length() );
+        for( int i = Math.max( start, 0 ); i < end; ++i )
+        {
+            int colour = parseColour( backgroundColour.charAt( i - start ), DEFAULT_BACKGROUND_COLOUR );
+            m_colours[ i ] = (byte) ((m_colours[ i ] & 0x0F) | (colour << 4));
+        }
+    }
+
+    public void writeBackgroundColour( UtfString backgroundColour, int start )
+    {
+        int end = Math.min( m_colours.length, start + backgroundColour.length() );
+        for( int i = Math.max( start, 0 ); i < end; ++i )
+        {
+            int colour = parseColour( backgroundColour.charAt( i - start ), DEFAULT_BACKGROUND_COLOUR );
+            m_colours[ i ] = (byte) ((m_colours[ i ] & 0x0F) | (colour << 4));
+        }
+    }
+
+    public String readTextColour()
+    {
+        char[] chars = new char[ m_colours.length ];
+        for( int i = 0; i < chars.length; ++i )
+        {
+            chars[ i ] = base16.charAt( getTextColour( i ) );
+        }
+        return new String( chars );
+    }
+
+    public String readBackgroundColour()
+    {
+        char[] chars = new char[ m_colours.length ];
+        for( int i = 0; i < chars.length; ++i )
+        {
+            chars[ i ] = base16.charAt( getBackgroundColour( i ) );
+        }
+        return new String( chars );
+    }
+
+    public byte[] toByteArray()
+    {
+        return m_colours.clone();
+    }
+
+    private static int parseColour( int c, int defaultColour )
+    {
+        if( c >= '0' && c <= '9' ) return c - '0';
+        if( c >= 'a' && c <= 'f' ) return c - 'a' + 10;
+        return defaultColour;
+    }
+}
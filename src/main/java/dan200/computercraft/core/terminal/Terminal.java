@@ -8,11 +8,10 @@ package dan200.computercraft.core.terminal;
 import dan200.computercraft.shared.utf.UtfString;
 import dan200.computercraft.shared.util.Palette;
 import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.network.PacketBuffer;
 
 public class Terminal
 {    
-    private static final String base16 = "0123456789abcdef";
-
     private int m_cursorX;
     private int m_cursorY;
     private boolean m_cursorBlink;
@@ -23,12 +22,14 @@ public class Terminal
     private int m_height;
 
     private TextBuffer m_text[];
-    private TextBuffer m_textColour[];
-    private TextBuffer m_backgroundColour[];
+    private ColourBuffer m_colours[];
 
     private final Palette m_palette;
 
     private boolean m_changed;
+    private boolean[] m_lineChanged;
+    private final int[] m_sentPalette;
+    private boolean m_fontChanged;
     
     private String m_fontname;
 
@@ -41,13 +42,11 @@ public class Terminal
         m_cursorBackgroundColour = 15;
 
         m_text = new TextBuffer[ m_height ];
-        m_textColour = new TextBuffer[ m_height ];
-        m_backgroundColour = new TextBuffer[ m_height ];
+        m_colours = new ColourBuffer[ m_height ];
         for( int i=0; i<m_height; ++i )
         {
             m_text[i] = new TextBuffer( ' ', m_width );
-            m_textColour[i] = new TextBuffer( base16.charAt( m_cursorColour ), m_width );
-            m_backgroundColour[i] = new TextBuffer( base16.charAt( m_cursorBackgroundColour ), m_width );
+            m_colours[i] = new ColourBuffer( m_cursorColour, m_cursorBackgroundColour, m_width );
         }
                 
         m_cursorX = 0;
@@ -55,10 +54,17 @@ public class Terminal
         m_cursorBlink = false;
         
         m_changed = false;
+        m_lineChanged = new boolean[ m_height ];
 
         m_palette = new Palette();
+        m_sentPalette = new int[ 16 ];
+        for( int i = 0; i < m_sentPalette.length; ++i )
+        {
+            m_sentPalette[ i ] = Palette.encodeRGB8( m_palette.getColour( i ) );
+        }
         
         m_fontname = "LEGACY";
+        m_fontChanged = false;
     }
 
     public void reset()
@@ -91,39 +97,35 @@ public class Terminal
         int oldHeight = m_height;
         int oldWidth = m_width;
         TextBuffer[] oldText = m_text;
-        TextBuffer[] oldTextColour = m_textColour;
-        TextBuffer[] oldBackgroundColour = m_backgroundColour;
+        ColourBuffer[] oldColours = m_colours;
 
         m_width = width;
         m_height = height;
 
         m_text = new TextBuffer[ m_height ];
-        m_textColour = new TextBuffer[ m_height ];
-        m_backgroundColour = new TextBuffer[ m_height ];
+        m_colours = new ColourBuffer[ m_height ];
         for( int i=0; i<m_height; ++i )
         {
             if( i >= oldHeight )
             {
                 m_text[ i ] = new TextBuffer( ' ', m_width );
-                m_textColour[ i ] = new TextBuffer( base16.charAt( m_cursorColour ), m_width );
-                m_backgroundColour[ i ] = new TextBuffer( base16.charAt( m_cursorBackgroundColour ), m_width );
+                m_colours[ i ] = new ColourBuffer( m_cursorColour, m_cursorBackgroundColour, m_width );
             }
             else if( m_width == oldWidth )
             {
                 m_text[ i ] = oldText[ i ];
-                m_textColour[ i ] = oldTextColour[ i ];
-                m_backgroundColour[ i ] = oldBackgroundColour[ i ];
+                m_colours[ i ] = oldColours[ i ];
             }
             else
             {
                 m_text[ i ] = new TextBuffer( ' ', m_width );
-                m_textColour[ i ] = new TextBuffer( base16.charAt( m_cursorColour ), m_width );
-                m_backgroundColour[ i ] = new TextBuffer( base16.charAt( m_cursorBackgroundColour ), m_width );
+                m_colours[ i ] = new ColourBuffer( m_cursorColour, m_cursorBackgroundColour, m_width );
                 m_text[ i ].write( oldText[ i ] );
-                m_textColour[ i ].write( oldTextColour[ i ] );
-                m_backgroundColour[ i ].write( oldBackgroundColour[ i ] );
+                m_colours[ i ].write( oldColours[ i ] );
             }
         }
+        m_lineChanged = new boolean[ m_height ];
+        setLinesChanged();
         m_changed = true;
     }
     
@@ -201,8 +203,8 @@ public class Terminal
         if( y >= 0 && y < m_height )
         {
             m_text[ y ].write( text, x );
-            m_textColour[ y ].write( textColour, x );
-            m_backgroundColour[ y ].write( backgroundColour, x );
+            m_colours[ y ].blit( textColour, backgroundColour, x );
+            m_lineChanged[ y ] = true;
             m_changed = true;
         }
     }
@@ -214,8 +216,8 @@ public class Terminal
         if( y >= 0 && y < m_height )
         {
             m_text[ y ].write( text, x );
-            m_textColour[ y ].write( textColour, x );
-            m_backgroundColour[ y ].write( backgroundColour, x );
+            m_colours[ y ].blit( textColour, backgroundColour, x );
+            m_lineChanged[ y ] = true;
             m_changed = true;
         }
     }
@@ -227,8 +229,8 @@ public class Terminal
         if( y >= 0 && y < m_height )
         {
             m_text[ y ].write( text, x );
-            m_textColour[ y ].fill( base16.charAt( m_cursorColour ), x, x + text.length() );
-            m_backgroundColour[ y ].fill( base16.charAt( m_cursorBackgroundColour ), x, x + text.length() );
+            m_colours[ y ].fill( m_cursorColour, m_cursorBackgroundColour, x, x + text.length() );
+            m_lineChanged[ y ] = true;
             m_changed = true;
         }
     }
@@ -240,8 +242,8 @@ public class Terminal
         if( y >= 0 && y < m_height )
         {
             m_text[ y ].write( text, x );
-            m_textColour[ y ].fill( base16.charAt( m_cursorColour ), x, x + text.length() );
-            m_backgroundColour[ y ].fill( base16.charAt( m_cursorBackgroundColour ), x, x + text.length() );
+            m_colours[ y ].fill( m_cursorColour, m_cursorBackgroundColour, x, x + text.length() );
+            m_lineChanged[ y ] = true;
             m_changed = true;
         }
     }
@@ -251,27 +253,24 @@ public class Terminal
         if( yDiff != 0 )
         {
             TextBuffer[] newText = new TextBuffer[ m_height ];
-            TextBuffer[] newTextColour = new TextBuffer[ m_height ];
-            TextBuffer[] newBackgroundColour = new TextBuffer[ m_height ];
+            ColourBuffer[] newColours = new ColourBuffer[ m_height ];
             for( int y = 0; y < m_height; ++y )
             {
                 int oldY = y + yDiff;
                 if( oldY >= 0 && oldY < m_height )
                 {
                     newText[ y ] = m_text[ oldY ];
-                    newTextColour[ y ] = m_textColour[ oldY ];
-                    newBackgroundColour[ y ] = m_backgroundColour[ oldY ];
+                    newColours[ y ] = m_colours[ oldY ];
                 }
                 else
                 {
                     newText[ y ] = new TextBuffer( ' ', m_width );
-                    newTextColour[ y ] = new TextBuffer( base16.charAt( m_cursorColour ), m_width );
-                    newBackgroundColour[ y ] = new TextBuffer( base16.charAt( m_cursorBackgroundColour ), m_width );
+                    newColours[ y ] = new ColourBuffer( m_cursorColour, m_cursorBackgroundColour, m_width );
                 }
             }
             m_text = newText;
-            m_textColour = newTextColour;
-            m_backgroundColour = newBackgroundColour;
+            m_colours = newColours;
+            setLinesChanged();
             m_changed = true;
         }
     }
@@ -281,9 +280,9 @@ public class Terminal
         for( int y = 0; y < m_height; ++y )
         {
             m_text[ y ].fill( ' ' );
-            m_textColour[ y ].fill( base16.charAt( m_cursorColour ) );
-            m_backgroundColour[ y ].fill( base16.charAt( m_cursorBackgroundColour ) );
+            m_colours[ y ].fill( m_cursorColour, m_cursorBackgroundColour );
         }
+        setLinesChanged();
         m_changed = true;
     }
 
@@ -293,8 +292,8 @@ public class Terminal
         if( y >= 0 && y < m_height )
         {
             m_text[ y ].fill( ' ' );
-            m_textColour[ y ].fill( base16.charAt( m_cursorColour ) );
-            m_backgroundColour[ y ].fill( base16.charAt( m_cursorBackgroundColour ) );
+            m_colours[ y ].fill( m_cursorColour, m_cursorBackgroundColour );
+            m_lineChanged[ y ] = true;
             m_changed = true;
         }
     }
@@ -311,33 +310,26 @@ public class Terminal
     public void setLine( int y, String text, String textColour, String backgroundColour )
     {
         m_text[y].write( text );
-        m_textColour[y].write( textColour );
-        m_backgroundColour[y].write( backgroundColour );
+        m_colours[y].writeTextColour( textColour, 0 );
+        m_colours[y].writeBackgroundColour( backgroundColour, 0 );
+        m_lineChanged[y] = true;
         m_changed = true;
     }
 
     public void setLine( int y, UtfString text, UtfString textColour, UtfString backgroundColour )
     {
         m_text[y].write( text );
-        m_textColour[y].write( textColour );
-        m_backgroundColour[y].write( backgroundColour );
+        m_colours[y].writeTextColour( textColour, 0 );
+        m_colours[y].writeBackgroundColour( backgroundColour, 0 );
+        m_lineChanged[y] = true;
         m_changed = true;
     }
     
-    public TextBuffer getTextColourLine( int y )
-    {
-        if( y>=0 && y<m_height )
-        {
-            return m_textColour[ y ];
-        }
-        return null;
-    }
-
-    public TextBuffer getBackgroundColourLine( int y )
+    public ColourBuffer getColourLine( int y )
     {
         if( y>=0 && y<m_height )
         {
-            return m_backgroundColour[ y ];
+            return m_colours[ y ];
         }
         return null;
     }
@@ -357,6 +349,168 @@ public class Terminal
         m_changed = false;
     }
 
+    private void setLinesChanged()
+    {
+        for( int y = 0; y < m_height; ++y )
+        {
+            m_lineChanged[ y ] = true;
+        }
+    }
+
+    /**
+     * Write the parts of the terminal which have changed since the last call to this method: lines which have
+     * been modified, and palette entries which differ from the ones last sent. The result must be applied to a
+     * copy of this terminal which has received every earlier set of changes, or a full snapshot taken since.
+     *
+     * @param buffer The buffer to write to.
+     * @see #readChanges(PacketBuffer)
+     */
+    public void writeChanges( PacketBuffer buffer )
+    {
+        buffer.writeVarInt( m_width );
+        buffer.writeVarInt( m_height );
+        buffer.writeInt( m_cursorX );
+        buffer.writeInt( m_cursorY );
+        buffer.writeBoolean( m_cursorBlink );
+        buffer.writeByte( m_cursorColour );
+        buffer.writeByte( m_cursorBackgroundColour );
+
+        // Palette entries which differ from the ones we last sent
+        int paletteChanges = 0;
+        for( int i = 0; i < m_sentPalette.length; ++i )
+        {
+            if( Palette.encodeRGB8( m_palette.getColour( i ) ) != m_sentPalette[ i ] ) paletteChanges++;
+        }
+        buffer.writeByte( paletteChanges );
+        for( int i = 0; i < m_sentPalette.length; ++i )
+        {
+            int rgb = Palette.encodeRGB8( m_palette.getColour( i ) );
+            if( rgb != m_sentPalette[ i ] )
+            {
+                m_sentPalette[ i ] = rgb;
+                buffer.writeByte( i );
+                buffer.writeMedium( rgb );
+            }
+        }
+
+        buffer.writeBoolean( m_fontChanged );
+        if( m_fontChanged )
+        {
+            buffer.writeString( m_fontname );
+            m_fontChanged = false;
+        }
+
+        int lineChanges = 0;
+        for( int y = 0; y < m_height; ++y )
+        {
+            if( m_lineChanged[ y ] ) lineChanges++;
+        }
+        buffer.writeVarInt( lineChanges );
+        for( int y = 0; y < m_height; ++y )
+        {
+            if( m_lineChanged[ y ] )
+            {
+                m_lineChanged[ y ] = false;
+                buffer.writeVarInt( y );
+
+                TextBuffer text = m_text[ y ];
+                for( int x = 0; x < m_width; ++x )
+                {
+                    buffer.writeVarInt( text.codepointAt( x ) );
+                }
+                writeRuns( buffer, m_colours[ y ] );
+            }
+        }
+    }
+
+    /**
+     * Apply changes written by {@link #writeChanges(PacketBuffer)}.
+     *
+     * @param buffer The buffer to read from.
+     * @return Whether the changes could be applied. If not, the terminal has a different size or the changes
+     * were malformed, and it needs to be fully resynchronised.
+     */
+    public boolean readChanges( PacketBuffer buffer )
+    {
+        int width = buffer.readVarInt();
+        int height = buffer.readVarInt();
+        if( width != m_width || height != m_height )
+        {
+            return false;
+        }
+
+        m_cursorX = buffer.readInt();
+        m_cursorY = buffer.readInt();
+        m_cursorBlink = buffer.readBoolean();
+        m_cursorColour = buffer.readUnsignedByte();
+        m_cursorBackgroundColour = buffer.readUnsignedByte();
+
+        int paletteChanges = buffer.readUnsignedByte();
+        for( int i = 0; i < paletteChanges; ++i )
+        {
+            int index = buffer.readUnsignedByte();
+            if( index >= m_sentPalette.length ) return false;
+            double[] rgb = Palette.decodeRGB8( buffer.readUnsignedMedium() );
+            m_palette.setColour( index, rgb[0], rgb[1], rgb[2] );
+        }
+
+        if( buffer.readBoolean() )
+        {
+            m_fontname = buffer.readString( Short.MAX_VALUE );
+        }
+
+        int lineChanges = buffer.readVarInt();
+        for( int i = 0; i < lineChanges; ++i )
+        {
+            int y = buffer.readVarInt();
+            if( y < 0 || y >= m_height ) return false;
+
+            TextBuffer text = m_text[ y ];
+            for( int x = 0; x < m_width; ++x )
+            {
+                text.setChar( x, buffer.readVarInt() );
+            }
+            if( !readRuns( buffer, m_colours[ y ] ) ) return false;
+        }
+
+        m_changed = true;
+        return true;
+    }
+
+    /**
+     * Colour lines are almost always a handful of long runs, so we write them as (length, colour) pairs.
+     */
+    private static void writeRuns( PacketBuffer buffer, ColourBuffer line )
+    {
+        int length = line.length();
+        int start = 0;
+        while( start < length )
+        {
+            byte colour = line.getPacked( start );
+            int end = start + 1;
+            while( end < length && line.getPacked( end ) == colour ) end++;
+
+            buffer.writeVarInt( end - start );
+            buffer.writeByte( colour );
+            start = end;
+        }
+    }
+
+    private static boolean readRuns( PacketBuffer buffer, ColourBuffer line )
+    {
+        int length = line.length();
+        int start = 0;
+        while( start < length )
+        {
+            int run = buffer.readVarInt();
+            byte colour = buffer.readByte();
+            if( run <= 0 || run > length - start ) return false;
+            line.fillPacked( colour, start, start + run );
+            start += run;
+        }
+        return true;
+    }
+
     public NBTTagCompound writeToNBT( NBTTagCompound nbttagcompound )
     {
         nbttagcompound.setInteger( "term_cursorX", m_cursorX );
@@ -367,8 +521,7 @@ public class Terminal
         for( int n=0; n<m_height; ++n )
         {
             nbttagcompound.setString( "term_text_" + n, m_text[n].toString() );
-            nbttagcompound.setString( "term_textColour_" + n, m_textColour[n].toString() );
-            nbttagcompound.setString( "term_textBgColour_" + n, m_backgroundColour[ n ].toString() );
+            nbttagcompound.setByteArray( "term_colour_" + n, m_colours[n].toByteArray() );
         }
         if(m_palette != null)
         {
@@ -393,15 +546,22 @@ public class Terminal
             {
                 m_text[n].write( nbttagcompound.getString( "term_text_" + n ) );
             }
-            m_textColour[n].fill( base16.charAt( m_cursorColour ) );
-            if( nbttagcompound.hasKey( "term_textColour_" + n ) )
+            m_colours[n].fill( m_cursorColour, m_cursorBackgroundColour );
+            if( nbttagcompound.hasKey( "term_colour_" + n ) )
             {
-                m_textColour[n].write( nbttagcompound.getString( "term_textColour_" + n ) );
+                m_colours[n].write( nbttagcompound.getByteArray( "term_colour_" + n ) );
             }
-            m_backgroundColour[n].fill( base16.charAt( m_cursorBackgroundColour ) );
-            if( nbttagcompound.hasKey( "term_textBgColour_" + n ) )
+            else
             {
-                m_backgroundColour[n].write( nbttagcompound.getString( "term_textBgColour_" + n ) );
+                // Terminals saved before colours were packed store them as hex strings
+                if( nbttagcompound.hasKey( "term_textColour_" + n ) )
+                {
+                    m_colours[n].writeTextColour( nbttagcompound.getString( "term_textColour_" + n ), 0 );
+                }
+                if( nbttagcompound.hasKey( "term_textBgColour_" + n ) )
+                {
+                    m_colours[n].writeBackgroundColour( nbttagcompound.getString( "term_textBgColour_" + n ), 0 );
+                }
             }
         }
         if (m_palette != null)
@@ -412,6 +572,7 @@ public class Terminal
         {
             m_fontname = nbttagcompound.getString("font_name");
         }
+        setLinesChanged();
         m_changed = true;
     }
 
@@ -423,6 +584,7 @@ public class Terminal
 		if (!name.equals(m_fontname))
 		{
 			m_fontname = name;
+			m_fontChanged = true;
 			m_changed = true;
 		}
 	}
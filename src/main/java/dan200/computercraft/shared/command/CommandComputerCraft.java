@@ -0,0 +1,141 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2017. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package dan200.computercraft.shared.command;
+
+import dan200.computercraft.ComputerCraft;
+import dan200.computercraft.core.computer.BootQueue;
+import dan200.computercraft.core.computer.ComputerMetrics;
+import dan200.computercraft.core.computer.ComputerThread;
+import dan200.computercraft.core.computer.MainThread;
+import dan200.computercraft.shared.computer.core.ServerComputer;
+import net.minecraft.command.CommandBase;
+import net.minecraft.command.CommandException;
+import net.minecraft.command.ICommandSender;
+import net.minecraft.command.WrongUsageException;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.text.TextComponentString;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reports which computers are costing the server the most time.
+ *
+ * {@code /computercraft top [count]} lists the most expensive computers, and {@code /computercraft reset}
+ * clears every computer's counters.
+ */
+public class CommandComputerCraft extends CommandBase
+{
+    private static final int DEFAULT_COUNT = 10;
+
+    @Nonnull
+    @Override
+    public String getName()
+    {
+        return "computercraft";
+    }
+
+    @Nonnull
+    @Override
+    public String getUsage( @Nonnull ICommandSender sender )
+    {
+        return "/computercraft <top [count]|reset>";
+    }
+
+    @Override
+    public int getRequiredPermissionLevel()
+    {
+        return 2;
+    }
+
+    @Override
+    public void execute( @Nonnull MinecraftServer server, @Nonnull ICommandSender sender, @Nonnull String[] args ) throws CommandException
+    {
+        if( args.length == 0 )
+        {
+            throw new WrongUsageException( getUsage( sender ) );
+        }
+
+        if( args[ 0 ].equals( "top" ) && args.length <= 2 )
+        {
+            int count = args.length == 2 ? parseInt( args[ 1 ], 1 ) : DEFAULT_COUNT;
+            sender.sendMessage( new TextComponentString( String.format(
+                "%d computers, %d queued events, %d queued main thread tasks",
+                ComputerCraft.serverComputerRegistry.getComputers().size(),
+                ComputerThread.getPendingTaskCount(),
+                MainThread.getPendingTaskCount()
+            ) ) );
+            sender.sendMessage( new TextComponentString( String.format(
+                "%d booting, %d waiting to boot, %d booted (average wait %dms, longest %dms)",
+                BootQueue.getBootingCount(),
+                BootQueue.getWaitingCount(),
+                BootQueue.getBootedCount(),
+                TimeUnit.NANOSECONDS.toMillis( BootQueue.getAverageWaitTime() ),
+                TimeUnit.NANOSECONDS.toMillis( BootQueue.getLongestWaitTime() )
+            ) ) );
+
+            for( ServerComputer computer : ComputerCraft.serverComputerRegistry.getMostExpensive( count ) )
+            {
+                sender.sendMessage( new TextComponentString( describe( computer ) ) );
+            }
+        }
+        else if( args[ 0 ].equals( "reset" ) && args.length == 1 )
+        {
+            for( ServerComputer computer : ComputerCraft.serverComputerRegistry.getComputers() )
+            {
+                computer.getMetrics().reset();
+            }
+            sender.sendMessage( new TextComponentString( "Reset computer metrics" ) );
+        }
+        else
+        {
+            throw new WrongUsageException( getUsage( sender ) );
+        }
+    }
+
+    @Nonnull
+    @Override
+    public List<String> getTabCompletions( MinecraftServer server, ICommandSender sender, String[] args, @Nullable BlockPos pos )
+    {
+        return args.length == 1 ? getListOfStringsMatchingLastWord( args, "top", "reset" ) : Collections.emptyList();
+    }
+
+    private static String describe( ServerComputer computer )
+    {
+        ComputerMetrics metrics = computer.getMetrics();
+
+        StringBuilder builder = new StringBuilder();
+        builder.append( '#' ).append( computer.getID() );
+        if( computer.getLabel() != null )
+        {
+            builder.append( " (" ).append( computer.getLabel() ).append( ')' );
+        }
+
+        BlockPos pos = computer.getPosition();
+        if( pos != null )
+        {
+            builder.append( " at " ).append( pos.getX() ).append( ", " ).append( pos.getY() ).append( ", " ).append( pos.getZ() );
+        }
+
+        builder.append( String.format(
+            ": lua %dms, %d events (%d dropped, %d queued), %d tasks %dms, %d/%d aborts",
+            TimeUnit.NANOSECONDS.toMillis( metrics.getLuaTime() ),
+            metrics.getEventsHandled(),
+            metrics.getEventsDropped(),
+            computer.getPendingTaskCount(),
+            metrics.getMainThreadTasks(),
+            TimeUnit.NANOSECONDS.toMillis( metrics.getMainThreadTime() ),
+            metrics.getSoftAborts(),
+            metrics.getHardAborts()
+        ) );
+        return builder.toString();
+    }
+}
@@ -7,7 +7,9 @@
 package dan200.computercraft.shared.common;
 
 import dan200.computercraft.core.terminal.Terminal;
+import io.netty.buffer.Unpooled;
 import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.network.PacketBuffer;
 
 public class ClientTerminal implements ITerminal
 {
@@ -68,6 +70,17 @@ public class ClientTerminal implements ITerminal
         }
     }
 
+    /**
+     * Apply changes sent by {@link ServerTerminal#writeTerminalChanges()}.
+     *
+     * @return Whether the changes could be applied. If not, the full description should be requested.
+     */
+    public boolean readTerminalChanges( byte[] changes )
+    {
+        if( m_terminal == null || changes == null ) return false;
+        return m_terminal.readChanges( new PacketBuffer( Unpooled.wrappedBuffer( changes ) ) );
+    }
+
     private void resizeTerminal( int width, int height )
     {
         if( m_terminal == null )
@@ -7,7 +7,9 @@
 package dan200.computercraft.shared.common;
 
 import dan200.computercraft.core.terminal.Terminal;
+import io.netty.buffer.Unpooled;
 import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.network.PacketBuffer;
 
 public class ServerTerminal implements ITerminal
 {
@@ -15,6 +17,7 @@ public class ServerTerminal implements ITerminal
     private Terminal m_terminal;
     private boolean m_terminalChanged;
     private boolean m_terminalChangedLastFrame;
+    private boolean m_terminalReplacedLastFrame;
 
     public ServerTerminal( boolean colour )
     {
@@ -22,6 +25,7 @@ public class ServerTerminal implements ITerminal
         m_terminal = null;
         m_terminalChanged = false;
         m_terminalChangedLastFrame = false;
+        m_terminalReplacedLastFrame = false;
     }
 
     public ServerTerminal( boolean colour, int terminalWidth, int terminalHeight )
@@ -30,6 +34,7 @@ public class ServerTerminal implements ITerminal
         m_terminal = new Terminal( terminalWidth, terminalHeight );
         m_terminalChanged = false;
         m_terminalChangedLastFrame = false;
+        m_terminalReplacedLastFrame = false;
     }
 
     public void resize( int width, int height )
@@ -39,9 +44,10 @@ public class ServerTerminal implements ITerminal
             m_terminal = new Terminal( width, height );
             m_terminalChanged = true;
         }
-        else
+        else if( width != m_terminal.getWidth() || height != m_terminal.getHeight() )
         {
             m_terminal.resize( width, height );
+            m_terminalChanged = true;
         }
     }
 
@@ -57,6 +63,7 @@ public class ServerTerminal implements ITerminal
     public void update()
     {
         m_terminalChangedLastFrame = m_terminalChanged || (m_terminal != null && m_terminal.getChanged());
+        m_terminalReplacedLastFrame = m_terminalChanged;
         if( m_terminal != null )
         {
             m_terminal.clearChanged();
@@ -69,6 +76,15 @@ public class ServerTerminal implements ITerminal
         return m_terminalChangedLastFrame;
     }
 
+    /**
+     * Whether the terminal was created, deleted or resized last frame, in which case clients need the whole
+     * description rather than just the terminal's changes.
+     */
+    public boolean hasTerminalReplaced()
+    {
+        return m_terminalReplacedLastFrame;
+    }
+
     // ITerminal implementation
 
     @Override
@@ -97,4 +113,17 @@ public class ServerTerminal implements ITerminal
             nbttagcompound.setTag( "terminal", terminal );
         }
     }
+
+    public byte[] writeTerminalChanges()
+    {
+        PacketBuffer buffer = new PacketBuffer( Unpooled.buffer() );
+        synchronized( m_terminal )
+        {
+            m_terminal.writeChanges( buffer );
+        }
+
+        byte[] bytes = new byte[ buffer.readableBytes() ];
+        buffer.readBytes( bytes );
+        return bytes;
+    }
 }
@@ -156,7 +156,11 @@ public class ClientComputer extends ClientTerminal
     @Override
     public void readDescription( NBTTagCompound nbttagcompound )
     {
-        super.readDescription( nbttagcompound );
+        // Players who aren't looking at the terminal are only sent the computer's state
+        if( nbttagcompound.hasKey( "colour" ) )
+        {
+            super.readDescription( nbttagcompound );
+        }
 
         int oldID = m_computerID;
         String oldLabel = m_label;
@@ -193,6 +197,15 @@ public class ClientComputer extends ClientTerminal
                 readDescription( packet.m_dataNBT );
                 break;
             }
+            case ComputerCraftPacket.ComputerTerminalChanged:
+            {
+                if( !readTerminalChanges( packet.m_dataByte != null ? packet.m_dataByte[0] : null ) )
+                {
+                    // We've missed the full description, so ask for it again
+                    requestState();
+                }
+                break;
+            }
         }
     }
 }
@@ -14,19 +14,30 @@ import dan200.computercraft.api.peripheral.IPeripheral;
 import dan200.computercraft.core.apis.IAPIEnvironment;
 import dan200.computercraft.core.apis.ILuaAPI;
 import dan200.computercraft.core.computer.Computer;
+import dan200.computercraft.core.computer.ComputerMetrics;
+import dan200.computercraft.core.computer.ComputerThread;
 import dan200.computercraft.core.computer.IComputerEnvironment;
 import dan200.computercraft.shared.common.ServerTerminal;
 import dan200.computercraft.shared.network.ComputerCraftPacket;
 import dan200.computercraft.shared.network.INetworkedThing;
 import dan200.computercraft.shared.util.NBTUtil;
 import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.inventory.Container;
 import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.server.management.PlayerChunkMap;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
+import net.minecraft.world.WorldServer;
+import net.minecraftforge.fml.common.FMLCommonHandler;
 import net.minecraftforge.fml.common.Loader;
 
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 public class ServerComputer extends ServerTerminal
     implements IComputer, IComputerEnvironment, INetworkedThing
@@ -43,6 +54,8 @@ public class ServerComputer extends ServerTerminal
     private boolean m_changedLastFrame;
     private int m_ticksSincePing;
 
+    private final Set<EntityPlayerMP> m_watchers;
+
     public ServerComputer( World world, int computerID, String label, int instanceID, ComputerFamily family, int terminalWidth, int terminalHeight )
     {
         super( family != ComputerFamily.Normal, terminalWidth, terminalHeight );
@@ -58,6 +71,8 @@ public class ServerComputer extends ServerTerminal
 
         m_changedLastFrame = false;
         m_ticksSincePing = 0;
+
+        m_watchers = new HashSet<>();
     }
 
     public World getWorld()
@@ -132,15 +147,92 @@ public class ServerComputer extends ServerTerminal
         m_changed = true;
     }
 
+    /**
+     * Update the set of players who have this computer's terminal open, sending the full state to
+     * any who have only just started watching it.
+     *
+     * @param watchers The players who currently have a container for this computer open.
+     */
+    public void setWatchers( Collection<EntityPlayerMP> watchers )
+    {
+        for( EntityPlayerMP player : watchers )
+        {
+            if( !m_watchers.contains( player ) )
+            {
+                sendState( player );
+            }
+        }
+        m_watchers.clear();
+        m_watchers.addAll( watchers );
+    }
+
     public void broadcastState()
     {
-        // Send state to client
-        ComputerCraftPacket packet = new ComputerCraftPacket();
-        packet.m_packetType = ComputerCraftPacket.ComputerChanged;
-        packet.m_dataInt = new int[] { getInstanceID() };
-        packet.m_dataNBT = new NBTTagCompound();
-        writeDescription( packet.m_dataNBT );
-        ComputerCraft.sendToAllPlayers( packet );
+        // Players looking at the terminal get the whole description
+        if( !m_watchers.isEmpty() )
+        {
+            ComputerCraftPacket packet = new ComputerCraftPacket();
+            packet.m_packetType = ComputerCraftPacket.ComputerChanged;
+            packet.m_dataInt = new int[] { getInstanceID() };
+            packet.m_dataNBT = new NBTTagCompound();
+            writeDescription( packet.m_dataNBT );
+            ComputerCraft.sendToPlayers( m_watchers, packet );
+        }
+
+        // Anyone else who can see the computer only needs to know its state, not its terminal
+        List<EntityPlayerMP> trackers = getTrackingPlayers();
+        if( !trackers.isEmpty() )
+        {
+            ComputerCraftPacket packet = new ComputerCraftPacket();
+            packet.m_packetType = ComputerCraftPacket.ComputerChanged;
+            packet.m_dataInt = new int[] { getInstanceID() };
+            packet.m_dataNBT = new NBTTagCompound();
+            writeComputerDescription( packet.m_dataNBT );
+            ComputerCraft.sendToPlayers( trackers, packet );
+        }
+    }
+
+    public void broadcastTerminalChanges()
+    {
+        // Send just the parts of the terminal which have changed to the players looking at it
+        byte[] changes = writeTerminalChanges();
+        if( !m_watchers.isEmpty() )
+        {
+            ComputerCraftPacket packet = new ComputerCraftPacket();
+            packet.m_packetType = ComputerCraftPacket.ComputerTerminalChanged;
+            packet.m_dataInt = new int[] { getInstanceID() };
+            packet.m_dataByte = new byte[][] { changes };
+            ComputerCraft.sendToPlayers( m_watchers, packet );
+        }
+    }
+
+    /**
+     * Find the players who aren't watching this computer's terminal, but have the chunk it is in loaded.
+     */
+    private List<EntityPlayerMP> getTrackingPlayers()
+    {
+        List<EntityPlayerMP> players = new ArrayList<>();
+        if( m_world instanceof WorldServer && m_position != null )
+        {
+            PlayerChunkMap chunkMap = ((WorldServer) m_world).getPlayerChunkMap();
+            for( EntityPlayer player : m_world.playerEntities )
+            {
+                if( player instanceof EntityPlayerMP && !m_watchers.contains( player ) &&
+                    chunkMap.isPlayerWatchingChunk( (EntityPlayerMP) player, m_position.getX() >> 4, m_position.getZ() >> 4 ) )
+                {
+                    players.add( (EntityPlayerMP) player );
+                }
+            }
+        }
+        else
+        {
+            // We don't know where this computer is, so assume everyone can see it
+            for( EntityPlayerMP player : FMLCommonHandler.instance().getMinecraftServerInstance().getPlayerList().getPlayers() )
+            {
+                if( !m_watchers.contains( player ) ) players.add( player );
+            }
+        }
+        return players;
     }
 
     public void sendState( EntityPlayer player )
@@ -163,6 +255,16 @@ public class ServerComputer extends ServerTerminal
         ComputerCraft.sendToAllPlayers( packet );
     }
 
+    public ComputerMetrics getMetrics()
+    {
+        return m_computer.getMetrics();
+    }
+
+    public int getPendingTaskCount()
+    {
+        return ComputerThread.getPendingTaskCount( m_computer );
+    }
+
     public IWritableMount getRootMount()
     {
         return m_computer.getRootMount();
@@ -317,6 +419,20 @@ public class ServerComputer extends ServerTerminal
         return ComputerCraft.getResourceFile( ComputerCraft.class, domain, subPath );
     }
 
+    @Override
+    public double getBootPriority()
+    {
+        // Boot computers players are likely to be looking at first: the nearest player's distance, squared
+        if( m_world == null || m_position == null ) return Double.MAX_VALUE;
+
+        double closest = Double.MAX_VALUE;
+        for( EntityPlayer player : m_world.playerEntities )
+        {
+            closest = Math.min( closest, player.getDistanceSqToCenter( m_position ) );
+        }
+        return closest;
+    }
+
     @Override
     public long getComputerSpaceLimit()
     {
@@ -341,7 +457,14 @@ public class ServerComputer extends ServerTerminal
     public void writeDescription( NBTTagCompound nbttagcompound )
     {
         super.writeDescription( nbttagcompound );
+        writeComputerDescription( nbttagcompound );
+    }
 
+    /**
+     * Write everything but the terminal. Clients leave their terminal alone when given one of these.
+     */
+    private void writeComputerDescription( NBTTagCompound nbttagcompound )
+    {
         nbttagcompound.setInteger( "id", m_computer.getID() );
         String label = m_computer.getLabel();
         if( label != null )
@@ -6,7 +6,17 @@
 
 package dan200.computercraft.shared.computer.core;
 
+import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraft.inventory.Container;
+import net.minecraftforge.fml.common.FMLCommonHandler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 public class ServerComputerRegistry extends ComputerRegistry<ServerComputer>
 {
@@ -16,6 +26,21 @@ public class ServerComputerRegistry extends ComputerRegistry<ServerComputer>
 
     public void update()
     {
+        // Work out who is looking at which computer's terminal
+        Map<ServerComputer, List<EntityPlayerMP>> watchers = new HashMap<>();
+        for( EntityPlayerMP player : FMLCommonHandler.instance().getMinecraftServerInstance().getPlayerList().getPlayers() )
+        {
+            Container container = player.openContainer;
+            if( container instanceof IContainerComputer )
+            {
+                IComputer computer = ((IContainerComputer) container).getComputer();
+                if( computer instanceof ServerComputer )
+                {
+                    watchers.computeIfAbsent( (ServerComputer) computer, x -> new ArrayList<>() ).add( player );
+                }
+            }
+        }
+
         Iterator<ServerComputer> it = getComputers().iterator();
         while( it.hasNext() )
         {
@@ -31,14 +56,39 @@ public class ServerComputerRegistry extends ComputerRegistry<ServerComputer>
             else
             {
                 computer.update();
-                if( computer.hasTerminalChanged() || computer.hasOutputChanged() )
+                computer.setWatchers( watchers.getOrDefault( computer, Collections.emptyList() ) );
+                if( computer.hasOutputChanged() || computer.hasTerminalReplaced() )
                 {
                     computer.broadcastState();
                 }
+                else if( computer.hasTerminalChanged() )
+                {
+                    computer.broadcastTerminalChanges();
+                }
             }
         }
     }
 
+    /**
+     * Find the computers which have cost the most time, across both the computer and main threads.
+     *
+     * @param limit The maximum number of computers to return.
+     * @return The most expensive computers, most expensive first.
+     */
+    public List<ServerComputer> getMostExpensive( int limit )
+    {
+        // Take a snapshot of each computer's cost first, as the counters may change while sorting.
+        Map<ServerComputer, Long> costs = new HashMap<>();
+        for( ServerComputer computer : getComputers() )
+        {
+            costs.put( computer, computer.getMetrics().getTotalTime() );
+        }
+
+        List<ServerComputer> computers = new ArrayList<>( costs.keySet() );
+        computers.sort( Comparator.comparingLong( (ServerComputer computer) -> costs.get( computer ) ).reversed() );
+        return computers.size() > limit ? new ArrayList<>( computers.subList( 0, limit ) ) : computers;
+    }
+
     @Override
     public void add( int instanceID, ServerComputer computer )
     {
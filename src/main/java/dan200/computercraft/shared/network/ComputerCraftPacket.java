@@ -31,6 +31,7 @@ public class ComputerCraftPacket
     // To client
     public static final byte ComputerChanged = 7;
     public static final byte ComputerDeleted = 8;
+    public static final byte ComputerTerminalChanged = 10;
 
     // Packet class
     public byte m_packetType;
@@ -199,7 +200,7 @@ public class ComputerCraftPacket
                 if( length > 0 )
                 {
                     m_dataByte[ k ] = new byte[ length ];
-                    buffer.getBytes( buffer.readerIndex(), m_dataByte[ k ] );
+                    buffer.readBytes( m_dataByte[ k ] );
                 }
             }
         }
@@ -58,7 +58,7 @@ public abstract class ModemPeripheral
             // Join new network
             if( m_network != null )
             {
-                m_network.addReceiver( this );
+                m_network.addReceiver( this, m_channels.toArray() );
             }
         }
     }
@@ -68,6 +68,17 @@ public abstract class ModemPeripheral
         setNetwork( getNetwork() );
     }
 
+    /**
+     * Let the network know this modem may have moved, so packets sent near its new position reach it.
+     */
+    protected synchronized void updatePosition()
+    {
+        if( m_network != null )
+        {
+            m_network.updateReceiver( this );
+        }
+    }
+
     public synchronized void destroy()
     {
         setNetwork( null );
@@ -176,6 +187,10 @@ public abstract class ModemPeripheral
                         }
 
                         m_channels.add( channel );
+                        if( m_network != null )
+                        {
+                            m_network.openChannel( this, channel );
+                        }
                         if( !m_open )
                         {
                             m_open = true;
@@ -203,6 +218,10 @@ public abstract class ModemPeripheral
                 {
                     if( m_channels.remove( channel ) )
                     {
+                        if( m_network != null )
+                        {
+                            m_network.closeChannel( this, channel );
+                        }
                         if( m_channels.size() == 0 )
                         {
                             m_open = false;
@@ -219,6 +238,13 @@ public abstract class ModemPeripheral
                 {
                     if( m_channels.size() > 0 )
                     {
+                        if( m_network != null )
+                        {
+                            for( int channel : m_channels.toArray() )
+                            {
+                                m_network.closeChannel( this, channel );
+                            }
+                        }
                         m_channels.clear();
                         
                         if( m_open )
@@ -24,6 +24,9 @@ import dan200.computercraft.shared.peripheral.common.BlockCableModemVariant;
 import dan200.computercraft.shared.peripheral.common.PeripheralItemFactory;
 import dan200.computercraft.shared.util.IDAssigner;
 import dan200.computercraft.shared.util.PeripheralUtil;
+import gnu.trove.iterator.TIntObjectIterator;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.item.ItemStack;
@@ -228,11 +231,15 @@ public class TileCable extends TileModemBase
         }
     }
 
-    private static int s_nextUniqueSearchID = 1;
+    /**
+     * Packets stop travelling along a cable after this distance
+     */
+    private static final int MAX_DISTANCE = 256;
 
     // Members
 
     private final Set<IPacketReceiver> m_receivers;
+    private final TIntObjectMap<Set<IPacketReceiver>> m_channelReceivers;
     private final Queue<PacketWrapper> m_transmitQueue;
     
     private boolean m_peripheralAccessAllowed;
@@ -242,12 +249,17 @@ public class TileCable extends TileModemBase
     private Map<String, RemotePeripheralWrapper> m_peripheralWrappersByName;
     private boolean m_peripheralsKnown;
     private boolean m_destroyed;
-    
-    private int m_lastSearchID;
+
+    private CableNetwork m_network;
+    private int m_networkIndex;
+    private boolean m_networkJoined;
+    private CableNetwork m_distancesNetwork;
+    private int[] m_modemDistances;
     
     public TileCable()
     {
         m_receivers = new HashSet<>();
+        m_channelReceivers = new TIntObjectHashMap<>();
         m_transmitQueue = new LinkedList<>();
         
         m_peripheralAccessAllowed = false;
@@ -257,8 +269,12 @@ public class TileCable extends TileModemBase
         m_peripheralWrappersByName = new HashMap<>();
         m_peripheralsKnown = false;
         m_destroyed = false;
-        
-        m_lastSearchID = 0;
+
+        m_network = null;
+        m_networkIndex = -1;
+        m_networkJoined = false;
+        m_distancesNetwork = null;
+        m_modemDistances = null;
     }
 
     @Override
@@ -359,10 +375,28 @@ public class TileCable extends TileModemBase
                     ((BlockGeneric)getBlockType()).dropItem( getWorld(), getPos(), PeripheralItemFactory.create( PeripheralType.WiredModem, getLabel(), 1 ) );
                     setLabel( null );
                     setBlockState( getBlockState().withProperty( BlockCable.Properties.MODEM, BlockCableModemVariant.None ) );
+                    networkChanged();
                     break;
                 }
             }
         }
+
+        // Only rebuild the network if a cable has been connected or disconnected
+        if( !getWorld().isRemote && !m_destroyed && m_network != null && m_network.m_valid &&
+            m_networkIndex >= 0 && getConnectedSides() != m_network.m_connectedSides[ m_networkIndex ] )
+        {
+            networkChanged();
+        }
+    }
+
+    @Override
+    public void onChunkUnload()
+    {
+        super.onChunkUnload();
+        if( m_network != null )
+        {
+            m_network.invalidate();
+        }
     }
 
     public AxisAlignedBB getModemBounds()
@@ -552,6 +586,13 @@ public class TileCable extends TileModemBase
         super.update();
         if( !getWorld().isRemote )
         {        
+            if( !m_networkJoined )
+            {
+                // We've just been placed or loaded, so any network we touch needs rebuilding
+                m_networkJoined = true;
+                networkChanged();
+            }
+
             synchronized( m_peripheralsByName )
             {
                 if( !m_peripheralsKnown )
@@ -584,13 +625,63 @@ public class TileCable extends TileModemBase
             m_receivers.add( receiver );
         }
     }
-    
+
+    @Override
+    public void addReceiver( @Nonnull IPacketReceiver receiver, @Nonnull int[] channels )
+    {
+        synchronized( m_receivers )
+        {
+            for( int channel : channels )
+            {
+                openChannel( receiver, channel );
+            }
+        }
+    }
+
     @Override
     public void removeReceiver( @Nonnull IPacketReceiver receiver )
     {
         synchronized( m_receivers )
         {
-            m_receivers.remove( receiver );
+            if( !m_receivers.remove( receiver ) )
+            {
+                TIntObjectIterator<Set<IPacketReceiver>> it = m_channelReceivers.iterator();
+                while( it.hasNext() )
+                {
+                    it.advance();
+                    if( it.value().remove( receiver ) && it.value().isEmpty() )
+                    {
+                        it.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void openChannel( @Nonnull IPacketReceiver receiver, int channel )
+    {
+        synchronized( m_receivers )
+        {
+            Set<IPacketReceiver> receivers = m_channelReceivers.get( channel );
+            if( receivers == null )
+            {
+                m_channelReceivers.put( channel, receivers = new HashSet<>() );
+            }
+            receivers.add( receiver );
+        }
+    }
+
+    @Override
+    public void closeChannel( @Nonnull IPacketReceiver receiver, int channel )
+    {
+        synchronized( m_receivers )
+        {
+            Set<IPacketReceiver> receivers = m_channelReceivers.get( channel );
+            if( receivers != null && receivers.remove( receiver ) && receivers.isEmpty() )
+            {
+                m_channelReceivers.remove( channel );
+            }
         }
     }
 
@@ -682,30 +773,24 @@ public class TileCable extends TileModemBase
     {
         if( !getWorld().isRemote )
         {
-            if( !m_destroyed )
+            // Forget the layout of our network, and of any network we may have just joined or split
+            // from. Everything will be rebuilt the next time a packet is sent or peripherals are found.
+            if( m_network != null )
             {
-                // If this modem is alive, rebuild the network
-                searchNetwork( ( modem, distance ) ->
-                {
-                    synchronized( modem.m_peripheralsByName )
-                    {
-                        modem.m_peripheralsKnown = false;
-                    }
-                } );
+                m_network.invalidate();
             }
-            else
+            for( EnumFacing dir : EnumFacing.values() )
             {
-                // If this modem is dead, rebuild the neighbours' networks
-                for( EnumFacing dir : EnumFacing.values() )
+                BlockPos offset = getPos().offset( dir );
+                if( offset.getY() >= 0 && offset.getY() < getWorld().getHeight() && BlockCable.isCable( getWorld(), offset ) )
                 {
-                    BlockPos offset = getPos().offset( dir );
-                    if( offset.getY() >= 0 && offset.getY() < getWorld().getHeight() && BlockCable.isCable( getWorld(), offset ) )
+                    TileEntity tile = getWorld().getTileEntity( offset );
+                    if( tile != null && tile instanceof TileCable )
                     {
-                        TileEntity tile = getWorld().getTileEntity( offset );
-                        if( tile != null && tile instanceof TileCable )
+                        TileCable modem = (TileCable)tile;
+                        if( modem.m_network != null )
                         {
-                            TileCable modem = (TileCable)tile;
-                            modem.networkChanged();
+                            modem.m_network.invalidate();
                         }
                     }
                 }
@@ -731,13 +816,20 @@ public class TileCable extends TileModemBase
         
     private void dispatchPacket( final PacketWrapper packet )
     {
-        searchNetwork( ( modem, distance ) ->
+        CableNetwork network = getNetwork();
+        int[] distances = getModemDistances( network );
+        for( int i = 0; i < distances.length; ++i )
         {
-            if( distance <= packet.m_range)
+            int distance = distances[ i ];
+            if( distance >= 0 && distance <= packet.m_range )
             {
-                modem.receivePacket( packet.m_packet, distance );
+                TileCable modem = network.m_cables[ network.m_modems[ i ] ];
+                if( !modem.m_destroyed )
+                {
+                    modem.receivePacket( packet.m_packet, distance );
+                }
             }
-        } );
+        }
     }
     
     private void receivePacket( Packet packet, int distanceTravelled )
@@ -748,6 +840,15 @@ public class TileCable extends TileModemBase
             {
                 device.receiveSameDimension( packet, distanceTravelled );
             }
+
+            Set<IPacketReceiver> listeners = m_channelReceivers.get( packet.getChannel() );
+            if( listeners != null )
+            {
+                for( IPacketReceiver device : listeners )
+                {
+                    device.receiveSameDimension( packet, distanceTravelled );
+                }
+            }
         }
     }
     
@@ -875,18 +976,21 @@ public class TileCable extends TileModemBase
             final Map<String, IPeripheral> newPeripheralsByName = new HashMap<>();
             if( getPeripheralType() == PeripheralType.WiredModemWithCable )
             {
-                searchNetwork( ( modem, distance ) ->
-                {
-                if( modem != origin )
+                CableNetwork network = getNetwork();
+                int[] distances = getModemDistances( network );
+                for( int i = 0; i < distances.length; ++i )
                 {
-                    IPeripheral peripheral = modem.getConnectedPeripheral();
-                    String periphName = modem.getConnectedPeripheralName();
-                    if( peripheral != null && periphName != null )
+                    TileCable modem = network.m_cables[ network.m_modems[ i ] ];
+                    if( distances[ i ] >= 0 && modem != origin && !modem.m_destroyed )
                     {
-                        newPeripheralsByName.put( periphName, peripheral );
+                        IPeripheral peripheral = modem.getConnectedPeripheral();
+                        String periphName = modem.getConnectedPeripheralName();
+                        if( peripheral != null && periphName != null )
+                        {
+                            newPeripheralsByName.put( periphName, peripheral );
+                        }
                     }
                 }
-                } );
             }
             //System.out.println( newPeripheralsByName.size()+" peripherals discovered" );
 
@@ -974,71 +1078,207 @@ public class TileCable extends TileModemBase
     }
     
     // Generic network search stuff
-    
-    private interface ICableVisitor
-    {
-        void visit( TileCable modem, int distance );
-    }
-    
-    private static class SearchLoc
+
+    /**
+     * A group of connected cables, built once and then shared by every cable in it until a cable is added,
+     * removed, loaded or unloaded.
+     */
+    private static class CableNetwork
     {
-        public World world;
-        public BlockPos pos;
-        public int distanceTravelled;
+        final TileCable[] m_cables;
+        final int[][] m_neighbours;
+        final int[] m_connectedSides;
+        final int[] m_modems;
+        boolean m_valid;
+
+        CableNetwork( TileCable[] cables, int[][] neighbours, int[] connectedSides, int[] modems )
+        {
+            m_cables = cables;
+            m_neighbours = neighbours;
+            m_connectedSides = connectedSides;
+            m_modems = modems;
+            m_valid = true;
+        }
+
+        void invalidate()
+        {
+            if( m_valid )
+            {
+                m_valid = false;
+                for( TileCable cable : m_cables )
+                {
+                    synchronized( cable.m_peripheralsByName )
+                    {
+                        cable.m_peripheralsKnown = false;
+                    }
+                }
+            }
+        }
     }
-    
-    private static void enqueue( Queue<SearchLoc> queue, World world, BlockPos pos, int distanceTravelled )
+
+    private boolean isConnectedCable( BlockPos pos )
     {
+        World world = getWorld();
         int y = pos.getY();
         if( y >= 0 && y < world.getHeight() && BlockCable.isCable( world, pos ) )
         {
-            SearchLoc loc = new SearchLoc();
-            loc.world = world;
-            loc.pos = pos;
-            loc.distanceTravelled = distanceTravelled;
-            queue.offer( loc );
+            TileEntity tile = world.getTileEntity( pos );
+            return tile instanceof TileCable && !((TileCable)tile).m_destroyed;
         }
+        return false;
     }
-    
-    private static void visitBlock( Queue<SearchLoc> queue, SearchLoc location, int searchID, ICableVisitor visitor )
+
+    /**
+     * Get a bitmask of the sides which currently have a cable attached.
+     */
+    private int getConnectedSides()
     {
-        if( location.distanceTravelled >= 256 )
+        int sides = 0;
+        for( EnumFacing dir : EnumFacing.values() )
         {
-            return;
+            if( isConnectedCable( getPos().offset( dir ) ) )
+            {
+                sides |= 1 << dir.ordinal();
+            }
         }
-        
-        TileEntity tile = location.world.getTileEntity( location.pos );
-        if( tile != null && tile instanceof TileCable )
+        return sides;
+    }
+
+    /**
+     * Get the network this cable belongs to, walking the cables to rebuild it if the layout has changed.
+     */
+    private CableNetwork getNetwork()
+    {
+        if( m_network != null && m_network.m_valid )
         {
-            TileCable modem = (TileCable)tile;
-            if( !modem.m_destroyed && modem.m_lastSearchID != searchID )
+            return m_network;
+        }
+
+        List<TileCable> cables = new ArrayList<>();
+        Map<BlockPos, Integer> indices = new HashMap<>();
+        Queue<BlockPos> queue = new ArrayDeque<>();
+        if( !m_destroyed && isConnectedCable( getPos() ) )
+        {
+            indices.put( getPos(), 0 );
+            cables.add( this );
+            queue.offer( getPos() );
+        }
+
+        World world = getWorld();
+        while( queue.peek() != null )
+        {
+            BlockPos pos = queue.remove();
+            for( EnumFacing dir : EnumFacing.values() )
             {
-                modem.m_lastSearchID = searchID;
-                visitor.visit( modem, location.distanceTravelled + 1 );
-                
-                enqueue( queue, location.world, location.pos.up(), location.distanceTravelled + 1 );
-                enqueue( queue, location.world, location.pos.down(), location.distanceTravelled + 1 );
-                enqueue( queue, location.world, location.pos.south(), location.distanceTravelled + 1 );
-                enqueue( queue, location.world, location.pos.north(), location.distanceTravelled + 1 );
-                enqueue( queue, location.world, location.pos.east(), location.distanceTravelled + 1 );
-                enqueue( queue, location.world, location.pos.west(), location.distanceTravelled + 1 );
+                BlockPos offset = pos.offset( dir );
+                if( !indices.containsKey( offset ) && isConnectedCable( offset ) )
+                {
+                    indices.put( offset, cables.size() );
+                    cables.add( (TileCable)world.getTileEntity( offset ) );
+                    queue.offer( offset );
+                }
+            }
+        }
+
+        // Record how the cables are linked, and which of them carry a modem
+        int count = cables.size();
+        int[][] neighbours = new int[ count ][];
+        int[] connectedSides = new int[ count ];
+        List<Integer> modems = new ArrayList<>();
+        int[] links = new int[ 6 ];
+        for( int i = 0; i < count; ++i )
+        {
+            TileCable cable = cables.get( i );
+            int linkCount = 0;
+            for( EnumFacing dir : EnumFacing.values() )
+            {
+                Integer index = indices.get( cable.getPos().offset( dir ) );
+                if( index != null )
+                {
+                    links[ linkCount++ ] = index;
+                    connectedSides[ i ] |= 1 << dir.ordinal();
+                }
+            }
+            neighbours[ i ] = Arrays.copyOf( links, linkCount );
+            if( cable.getPeripheralType() != PeripheralType.Cable )
+            {
+                modems.add( i );
             }
         }
+
+        int[] modemIndices = new int[ modems.size() ];
+        for( int i = 0; i < modemIndices.length; ++i )
+        {
+            modemIndices[ i ] = modems.get( i );
+        }
+
+        CableNetwork network = new CableNetwork( cables.toArray( new TileCable[ count ] ), neighbours, connectedSides, modemIndices );
+        for( int i = 0; i < count; ++i )
+        {
+            TileCable cable = cables.get( i );
+            cable.m_network = network;
+            cable.m_networkIndex = i;
+        }
+        if( count == 0 )
+        {
+            // A lone modem with no cable is never part of a network
+            m_network = network;
+            m_networkIndex = -1;
+        }
+        return network;
     }
 
-    private void searchNetwork( ICableVisitor visitor )
+    /**
+     * Get the distance a packet sent from this cable travels to reach each modem in the network, or -1 if
+     * the modem is out of reach.
+     */
+    private int[] getModemDistances( CableNetwork network )
     {
-        int searchID = ++s_nextUniqueSearchID;
-        Queue<SearchLoc> queue = new LinkedList<>();
-        enqueue( queue, getWorld(), getPos(), 1 );
-        
-        int visited = 0;
-        while( queue.peek() != null )
+        if( m_distancesNetwork == network && m_modemDistances != null )
         {
-            SearchLoc loc = queue.remove();
-            visitBlock( queue, loc, searchID, visitor );
-            visited++;
+            return m_modemDistances;
         }
-        //System.out.println( "Visited "+visited+" common" );
+
+        int[] distances = new int[ network.m_modems.length ];
+        Arrays.fill( distances, -1 );
+        if( m_networkIndex >= 0 )
+        {
+            // Breadth first search from this cable to find how many cables lie between us and every other one
+            int[] hops = new int[ network.m_cables.length ];
+            Arrays.fill( hops, -1 );
+            int[] queue = new int[ network.m_cables.length ];
+            int head = 0, tail = 0;
+            hops[ m_networkIndex ] = 0;
+            queue[ tail++ ] = m_networkIndex;
+            while( head < tail )
+            {
+                int cable = queue[ head++ ];
+                if( hops[ cable ] + 2 >= MAX_DISTANCE )
+                {
+                    continue;
+                }
+                for( int neighbour : network.m_neighbours[ cable ] )
+                {
+                    if( hops[ neighbour ] < 0 )
+                    {
+                        hops[ neighbour ] = hops[ cable ] + 1;
+                        queue[ tail++ ] = neighbour;
+                    }
+                }
+            }
+
+            for( int i = 0; i < distances.length; ++i )
+            {
+                int hop = hops[ network.m_modems[ i ] ];
+                if( hop >= 0 )
+                {
+                    distances[ i ] = hop + 2;
+                }
+            }
+        }
+
+        m_distancesNetwork = network;
+        m_modemDistances = distances;
+        return distances;
     }
 }
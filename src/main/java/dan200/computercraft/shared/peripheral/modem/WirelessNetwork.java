@@ -7,17 +7,34 @@
 package dan200.computercraft.shared.peripheral.modem;
 
 import com.google.common.base.Preconditions;
+import dan200.computercraft.ComputerCraft;
 import dan200.computercraft.api.network.IPacketNetwork;
 import dan200.computercraft.api.network.IPacketReceiver;
 import dan200.computercraft.api.network.IPacketSender;
 import dan200.computercraft.api.network.Packet;
+import gnu.trove.iterator.TIntIterator;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.World;
 
 import javax.annotation.Nonnull;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 public class WirelessNetwork implements IPacketNetwork
 {
+    /**
+     * Receivers are bucketed into columns of this many blocks (as a power of two) along the X and Z axes
+     */
+    private static final int CELL_SHIFT = 7;
+
     private static WirelessNetwork s_universalNetwork = null;
 
     public static WirelessNetwork getUniversal()
@@ -34,44 +51,172 @@ public class WirelessNetwork implements IPacketNetwork
         s_universalNetwork = null;
     }
 
-    private final Set<IPacketReceiver> m_receivers;
+    private final Map<IPacketReceiver, Entry> m_receivers;
+    private final ReceiverIndex m_unfiltered;
+    private final TIntObjectMap<ReceiverIndex> m_channels;
 
     private WirelessNetwork()
     {
-        m_receivers = new HashSet<>();
+        m_receivers = new HashMap<>();
+        m_unfiltered = new ReceiverIndex();
+        m_channels = new TIntObjectHashMap<>();
     }
 
     @Override
     public synchronized void addReceiver( @Nonnull IPacketReceiver receiver )
     {
         Preconditions.checkNotNull( receiver, "device cannot be null" );
-        m_receivers.add( receiver );
+        addReceiver( receiver, (TIntSet) null );
+    }
+
+    @Override
+    public synchronized void addReceiver( @Nonnull IPacketReceiver receiver, @Nonnull int[] channels )
+    {
+        Preconditions.checkNotNull( receiver, "device cannot be null" );
+        Preconditions.checkNotNull( channels, "channels cannot be null" );
+        addReceiver( receiver, new TIntHashSet( channels ) );
+    }
+
+    private void addReceiver( IPacketReceiver receiver, TIntSet channels )
+    {
+        if( !m_receivers.containsKey( receiver ) )
+        {
+            Entry entry = new Entry( channels, receiver instanceof ModemPeripheral );
+            m_receivers.put( receiver, entry );
+            locate( receiver, entry );
+            place( receiver, entry );
+        }
     }
 
     @Override
     public synchronized void removeReceiver( @Nonnull IPacketReceiver receiver )
     {
         Preconditions.checkNotNull( receiver, "device cannot be null" );
-        m_receivers.remove( receiver );
+        Entry entry = m_receivers.remove( receiver );
+        if( entry != null )
+        {
+            unplace( receiver, entry );
+        }
+    }
+
+    @Override
+    public synchronized void openChannel( @Nonnull IPacketReceiver receiver, int channel )
+    {
+        Preconditions.checkNotNull( receiver, "device cannot be null" );
+        Entry entry = m_receivers.get( receiver );
+        if( entry != null && entry.m_channels != null && entry.m_channels.add( channel ) )
+        {
+            ReceiverIndex index = m_channels.get( channel );
+            if( index == null )
+            {
+                m_channels.put( channel, index = new ReceiverIndex() );
+            }
+            index.add( receiver, entry );
+        }
+    }
+
+    @Override
+    public synchronized void closeChannel( @Nonnull IPacketReceiver receiver, int channel )
+    {
+        Preconditions.checkNotNull( receiver, "device cannot be null" );
+        Entry entry = m_receivers.get( receiver );
+        if( entry != null && entry.m_channels != null && entry.m_channels.remove( channel ) )
+        {
+            removeFromChannel( receiver, entry, channel );
+        }
+    }
+
+    @Override
+    public synchronized void updateReceiver( @Nonnull IPacketReceiver receiver )
+    {
+        Preconditions.checkNotNull( receiver, "device cannot be null" );
+        Entry entry = m_receivers.get( receiver );
+        if( entry == null || !entry.m_tracked ) return;
+
+        World world = receiver.getWorld();
+        Vec3d position = world != null ? receiver.getPosition() : null;
+        boolean interdimensional = receiver.isInterdimensional();
+        if( entry.m_interdimensional == interdimensional && entry.m_world == world && (
+            (interdimensional || position == null) ?
+                entry.m_cell == 0 :
+                entry.m_cell == cellKey( position ) && receiver.getRange() <= entry.m_range
+        ) )
+        {
+            // Still in the same cell: nothing to do
+            return;
+        }
+
+        unplace( receiver, entry );
+        locate( receiver, entry );
+        place( receiver, entry );
     }
 
     @Override
     public synchronized void transmitSameDimension( @Nonnull Packet packet, double range )
     {
         Preconditions.checkNotNull( packet, "packet cannot be null" );
-        for( IPacketReceiver device : m_receivers )
+        transmitSameDimension( m_unfiltered, packet, range );
+
+        ReceiverIndex listeners = m_channels.get( packet.getChannel() );
+        if( listeners != null ) transmitSameDimension( listeners, packet, range );
+    }
+
+    private void transmitSameDimension( ReceiverIndex receivers, Packet packet, double range )
+    {
+        IPacketSender sender = packet.getSender();
+
+        // Interdimensional receivers can hear everything, wherever they are
+        for( IPacketReceiver device : receivers.m_interdimensional )
+        {
+            tryTransmit( device, packet, range, false );
+        }
+
+        // We can't tell where these are, so have to check each of them
+        for( IPacketReceiver device : receivers.m_unindexed )
         {
             tryTransmit( device, packet, range, false );
         }
+
+        // Otherwise only visit the cells which could possibly be in range
+        WorldIndex index = receivers.m_worlds.get( sender.getWorld() );
+        if( index == null ) return;
+
+        Vec3d position = sender.getPosition();
+        double reach = Math.max( range, index.m_maxRange );
+        int minX = cellCoord( position.x - reach ), maxX = cellCoord( position.x + reach );
+        int minZ = cellCoord( position.z - reach ), maxZ = cellCoord( position.z + reach );
+        if( reach >= Integer.MAX_VALUE || (long) (maxX - minX + 1) * (maxZ - minZ + 1) > index.m_cells.size() )
+        {
+            // The area is sparsely populated, so it's cheaper to walk the occupied cells instead
+            for( Set<IPacketReceiver> cell : index.m_cells.valueCollection() )
+            {
+                for( IPacketReceiver device : cell ) tryTransmit( device, packet, range, false );
+            }
+            return;
+        }
+
+        for( int x = minX; x <= maxX; ++x )
+        {
+            for( int z = minZ; z <= maxZ; ++z )
+            {
+                Set<IPacketReceiver> cell = index.m_cells.get( cellKey( x, z ) );
+                if( cell == null ) continue;
+                for( IPacketReceiver device : cell ) tryTransmit( device, packet, range, false );
+            }
+        }
     }
 
     @Override
     public synchronized void transmitInterdimensional( @Nonnull Packet packet )
     {
         Preconditions.checkNotNull( packet, "packet cannot be null" );
-        for (IPacketReceiver device : m_receivers)
+        for( Map.Entry<IPacketReceiver, Entry> device : m_receivers.entrySet() )
         {
-            tryTransmit( device, packet, 0, true );
+            TIntSet channels = device.getValue().m_channels;
+            if( channels == null || channels.contains( packet.getChannel() ) )
+            {
+                tryTransmit( device.getKey(), packet, 0, true );
+            }
         }
     }
 
@@ -101,4 +246,214 @@ public class WirelessNetwork implements IPacketNetwork
     {
         return true;
     }
+
+    /**
+     * Record which world and cell a receiver currently belongs to
+     */
+    private static void locate( IPacketReceiver receiver, Entry entry )
+    {
+        World world = receiver.getWorld();
+        entry.m_world = world;
+        entry.m_interdimensional = receiver.isInterdimensional();
+        entry.m_cell = 0;
+        entry.m_range = 0;
+
+        // Receivers which aren't in a world yet are checked on every transmission until they're updated
+        Vec3d position = world != null ? receiver.getPosition() : null;
+        if( !entry.m_interdimensional && position != null )
+        {
+            entry.m_cell = cellKey( position );
+            entry.m_range = receiver.getRange();
+        }
+    }
+
+    private void place( IPacketReceiver receiver, Entry entry )
+    {
+        if( entry.m_channels == null )
+        {
+            m_unfiltered.add( receiver, entry );
+            return;
+        }
+
+        for( TIntIterator it = entry.m_channels.iterator(); it.hasNext(); )
+        {
+            int channel = it.next();
+            ReceiverIndex index = m_channels.get( channel );
+            if( index == null )
+            {
+                m_channels.put( channel, index = new ReceiverIndex() );
+            }
+            index.add( receiver, entry );
+        }
+    }
+
+    private void unplace( IPacketReceiver receiver, Entry entry )
+    {
+        if( entry.m_channels == null )
+        {
+            m_unfiltered.remove( receiver, entry );
+            return;
+        }
+
+        for( TIntIterator it = entry.m_channels.iterator(); it.hasNext(); )
+        {
+            removeFromChannel( receiver, entry, it.next() );
+        }
+    }
+
+    private void removeFromChannel( IPacketReceiver receiver, Entry entry, int channel )
+    {
+        ReceiverIndex index = m_channels.get( channel );
+        if( index != null && index.remove( receiver, entry ) )
+        {
+            m_channels.remove( channel );
+        }
+    }
+
+    private static int cellCoord( double coord )
+    {
+        return (int) Math.floor( coord ) >> CELL_SHIFT;
+    }
+
+    private static long cellKey( int x, int z )
+    {
+        // Offset by one so that no real cell has the key 0, which marks an unplaced receiver
+        return ((long) x << 32 | (z & 0xFFFFFFFFL)) + 1;
+    }
+
+    private static long cellKey( Vec3d position )
+    {
+        return cellKey( cellCoord( position.x ), cellCoord( position.z ) );
+    }
+
+    /**
+     * Where a receiver was last indexed, and which channels it is listening on
+     */
+    private static final class Entry
+    {
+        /**
+         * The channels this receiver is listening on, or {@code null} if it wants every packet
+         */
+        private final TIntSet m_channels;
+
+        /**
+         * Whether this receiver tells us when it moves. Only our own modems do, as other receivers may not
+         * know to call {@link IPacketNetwork#updateReceiver(IPacketReceiver)}.
+         */
+        private final boolean m_tracked;
+
+        private World m_world;
+        private boolean m_interdimensional;
+        private long m_cell;
+        private double m_range;
+
+        private Entry( TIntSet channels, boolean tracked )
+        {
+            m_channels = channels;
+            m_tracked = tracked;
+        }
+    }
+
+    /**
+     * A set of receivers, split into interdimensional ones, those which are bucketed by position, and those
+     * whose position we can't rely on
+     */
+    private static final class ReceiverIndex
+    {
+        private final Set<IPacketReceiver> m_interdimensional = new HashSet<>();
+        private final Set<IPacketReceiver> m_unindexed = new HashSet<>();
+        private final Map<World, WorldIndex> m_worlds = new HashMap<>();
+
+        private void add( IPacketReceiver receiver, Entry entry )
+        {
+            if( !entry.m_tracked || (!entry.m_interdimensional && entry.m_cell == 0) )
+            {
+                // Either it may move without telling us, or it had no position when it was last located
+                m_unindexed.add( receiver );
+            }
+            else if( entry.m_interdimensional )
+            {
+                m_interdimensional.add( receiver );
+            }
+            else
+            {
+                WorldIndex index = m_worlds.get( entry.m_world );
+                if( index == null )
+                {
+                    m_worlds.put( entry.m_world, index = new WorldIndex() );
+                }
+                index.add( entry.m_cell, receiver, entry.m_range );
+            }
+        }
+
+        /**
+         * @return Whether this index no longer has any receivers
+         */
+        private boolean remove( IPacketReceiver receiver, Entry entry )
+        {
+            if( !entry.m_tracked || (!entry.m_interdimensional && entry.m_cell == 0) )
+            {
+                m_unindexed.remove( receiver );
+            }
+            else if( entry.m_interdimensional )
+            {
+                m_interdimensional.remove( receiver );
+            }
+            else
+            {
+                WorldIndex index = m_worlds.get( entry.m_world );
+                if( index != null && index.remove( entry.m_cell, receiver ) )
+                {
+                    m_worlds.remove( entry.m_world );
+                }
+            }
+            return m_interdimensional.isEmpty() && m_unindexed.isEmpty() && m_worlds.isEmpty();
+        }
+    }
+
+    /**
+     * The receivers within a single world, grouped into cells
+     */
+    private static final class WorldIndex
+    {
+        private final TLongObjectMap<Set<IPacketReceiver>> m_cells = new TLongObjectHashMap<>();
+
+        /**
+         * An upper bound on the range of any receiver in this world. Our own modems' ranges vary with the
+         * weather and altitude, so we always allow for the largest range they could have.
+         */
+        private double m_maxRange = maxModemRange();
+
+        private void add( long key, IPacketReceiver receiver, double range )
+        {
+            Set<IPacketReceiver> cell = m_cells.get( key );
+            if( cell == null )
+            {
+                m_cells.put( key, cell = new HashSet<>() );
+            }
+            cell.add( receiver );
+            m_maxRange = Math.max( m_maxRange, range );
+        }
+
+        /**
+         * @return Whether this world no longer has any receivers
+         */
+        private boolean remove( long key, IPacketReceiver receiver )
+        {
+            Set<IPacketReceiver> cell = m_cells.get( key );
+            if( cell != null && cell.remove( receiver ) && cell.isEmpty() )
+            {
+                m_cells.remove( key );
+            }
+            return m_cells.isEmpty();
+        }
+    }
+
+    private static double maxModemRange()
+    {
+        return Math.max(
+            Math.max( ComputerCraft.modem_range, ComputerCraft.modem_highAltitudeRange ),
+            Math.max( ComputerCraft.modem_rangeDuringStorm, ComputerCraft.modem_highAltitudeRangeDuringStorm )
+        );
+    }
 }
@@ -552,7 +552,7 @@ public class TilePrinter extends TilePeripheralBase
             for( int i=0; i<height; ++i )
             {
                 lines[i] = m_page.getLine(i).toString();
-                colours[i] = m_page.getTextColourLine(i).toString();
+                colours[i] = m_page.getColourLine(i).readTextColour();
             }
             
             ItemStack stack = ItemPrintout.createSingleFromTitleAndText( m_pageTitle, lines, colours );
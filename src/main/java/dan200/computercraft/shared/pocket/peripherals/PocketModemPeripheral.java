@@ -32,6 +32,7 @@ public class PocketModemPeripheral extends WirelessModemPeripheral
             m_world = world;
             switchNetwork();
         }
+        updatePosition();
     }
 
     @Nonnull
@@ -9,6 +9,7 @@ package dan200.computercraft.shared.proxy;
 import dan200.computercraft.ComputerCraft;
 import dan200.computercraft.api.ComputerCraftAPI;
 import dan200.computercraft.api.pocket.IPocketUpgrade;
+import dan200.computercraft.core.computer.BootQueue;
 import dan200.computercraft.core.computer.MainThread;
 import dan200.computercraft.shared.common.ColourableRecipe;
 import dan200.computercraft.shared.common.DefaultBundledRedstoneProvider;
@@ -625,6 +626,7 @@ public abstract class ComputerCraftProxyCommon implements IComputerCraftProxy
             if (event.phase == TickEvent.Phase.START)
             {
                 MainThread.executePendingTasks();
+                BootQueue.update();
                 ComputerCraft.serverComputerRegistry.update();
             }
         }
@@ -225,6 +225,7 @@ public class TurtleModem implements ITurtleUpgrade
             if( peripheral != null && peripheral instanceof Peripheral )
             {
                 Peripheral modemPeripheral = (Peripheral)peripheral;
+                modemPeripheral.updatePosition();
                 if( modemPeripheral.pollChanged() )
                 {
                     turtle.getUpgradeNBTData( side ).setBoolean( "active", modemPeripheral.isActive() );
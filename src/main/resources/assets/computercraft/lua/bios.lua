@@ -973,6 +973,16 @@ function readutf8( _sReplaceChar, _tHistory, _fnComplete, _sDefault )
     return sLine
 end
 
+-- ROM files are named by their full path so they can be compiled once and shared between computers,
+-- though errors still report them by file name alone.
+local function chunkName( _sFile )
+    local sPath = fs.combine( _sFile, "" )
+    if string.sub( sPath, 1, 4 ) == "rom/" then
+        return "@" .. sPath
+    end
+    return fs.getName( _sFile )
+end
+
 loadfile = function( _sFile, _tEnv )
     if type( _sFile ) ~= "string" then
         error( "bad argument #1 (expected string, got " .. type( _sFile ) .. ")", 2 ) 
@@ -982,7 +992,7 @@ loadfile = function( _sFile, _tEnv )
     end
     local file = fs.open( _sFile, "r" )
     if file then
-        local func, err = load( file.readAll(), fs.getName( _sFile ), "t", _tEnv )
+        local func, err = load( file.readAll(), chunkName( _sFile ), "t", _tEnv )
         file.close()
         return func, err
     end
@@ -998,7 +1008,7 @@ loadfileutf8 = function( _sFile, _tEnv )
     end
     local file = fs.open( _sFile, "ru" )
     if file then
-        local func, err = load( file.readAll(), fs.getName( _sFile ), "t", _tEnv )
+        local func, err = load( file.readAll(), chunkName( _sFile ), "t", _tEnv )
         file.close()
         return func, err
     end
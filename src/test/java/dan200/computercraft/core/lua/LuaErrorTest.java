@@ -0,0 +1,57 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2017. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package dan200.computercraft.core.lua;
+
+import org.junit.Test;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.jse.JsePlatform;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Computers run without the debug library, so check errors still say where they happened.
+ */
+public class LuaErrorTest
+{
+    private static String errorOf( String source )
+    {
+        // The same globals LuaJLuaMachine uses
+        LuaValue globals = JsePlatform.standardGlobals();
+        LuaValue function = globals.get( "loadstring" ).call( LuaValue.valueOf( source ), LuaValue.valueOf( "@test" ) );
+        LuaValue coroutine = globals.get( "coroutine" ).get( "create" ).call( function );
+        Varargs result = globals.get( "coroutine" ).get( "resume" ).invoke( coroutine );
+        assertEquals( "Expected an error from " + source, false, result.arg1().toboolean() );
+        return result.arg( 2 ).tojstring();
+    }
+
+    @Test
+    public void testRuntimeError()
+    {
+        assertEquals( "test:2: attempt to call nil", errorOf( "local f\nf()" ) );
+        assertEquals( "test:4: attempt to index ? (a nil value)", errorOf( "local t = {}\nfor i = 1, 3 do\n t[i] = i end\nreturn t.x.y" ) );
+    }
+
+    @Test
+    public void testError()
+    {
+        assertEquals( "test:1: x", errorOf( "error('x')" ) );
+        assertEquals( "z", errorOf( "error('z', 0)" ) );
+    }
+
+    @Test
+    public void testErrorLevel()
+    {
+        assertEquals( "test:3: y", errorOf( "local function f() error('y', 2) end\n\nf()" ) );
+    }
+
+    @Test
+    public void testPcall()
+    {
+        assertEquals( "test:3: attempt to call nil", errorOf( "local ok, err = pcall(function()\n\n local n n() end)\nerror(err, 0)" ) );
+    }
+}
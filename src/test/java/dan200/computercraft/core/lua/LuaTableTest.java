@@ -0,0 +1,121 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2017. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package dan200.computercraft.core.lua;
+
+import org.junit.Test;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+import org.luaj.vm2.lib.jse.JsePlatform;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the array part of tables, which is stored as numbers while it only holds numbers, and removing keys
+ * from the hash part, which leaves tombstones behind.
+ */
+public class LuaTableTest
+{
+    private static Varargs run( String source )
+    {
+        LuaValue globals = JsePlatform.standardGlobals();
+        LuaValue function = globals.get( "loadstring" ).call( LuaValue.valueOf( source ), LuaValue.valueOf( "@test" ) );
+        return function.invoke();
+    }
+
+    @Test
+    public void testNumbers()
+    {
+        Varargs result = run(
+            "local t = {} for i = 1, 100 do t[i] = i * 0.5 end\n" +
+            "t[50] = nil\n" +
+            "local n = 0 for k, v in pairs(t) do n = n + 1 end\n" +
+            "t[10] = 'x'\n" +
+            "return n, t[3], t[4], t[10], t[11]"
+        );
+        assertEquals( 99, result.arg( 1 ).toint() );
+        assertEquals( 1.5, result.arg( 2 ).todouble(), 0 );
+        assertEquals( 2, result.arg( 3 ).toint() );
+        assertEquals( "x", result.arg( 4 ).tojstring() );
+        assertEquals( 5.5, result.arg( 5 ).todouble(), 0 );
+    }
+
+    @Test
+    public void testSort()
+    {
+        Varargs result = run(
+            "local t = {} for i = 1, 1000 do t[i] = (i * 7919) % 1000 end\n" +
+            "table.sort(t)\n" +
+            "for i = 2, #t do if t[i - 1] > t[i] then return false end end\n" +
+            "table.sort(t, function(a, b) return a > b end)\n" +
+            "for i = 2, #t do if t[i - 1] < t[i] then return false end end\n" +
+            "return true"
+        );
+        assertEquals( true, result.arg1().toboolean() );
+    }
+
+    @Test
+    public void testWeakValues()
+    {
+        Varargs result = run(
+            "local t = setmetatable({}, {__mode = 'v'})\n" +
+            "local keep = {}\n" +
+            "for i = 1, 40 do t[i] = {} keep[i] = t[i] end\n" +
+            "return #t, t[40] == keep[40]"
+        );
+        assertEquals( 40, result.arg( 1 ).toint() );
+        assertEquals( true, result.arg( 2 ).toboolean() );
+    }
+
+    @Test
+    public void testWeakNumbers()
+    {
+        Varargs result = run(
+            "local t = setmetatable({}, {__mode = 'v'})\n" +
+            "for i = 1, 40 do t[i] = i end\n" +
+            "local keep = {}\n" +
+            "t[41] = keep t[5] = keep\n" +
+            "return t[4], t[5] == keep, t[41] == keep"
+        );
+        assertEquals( 4, result.arg( 1 ).toint() );
+        assertEquals( true, result.arg( 2 ).toboolean() );
+        assertEquals( true, result.arg( 3 ).toboolean() );
+    }
+
+    @Test
+    public void testClearDuringTraversal()
+    {
+        Varargs result = run(
+            "local t = {} for i = 1, 1000 do t['k' .. i] = i end\n" +
+            "local seen, n = {}, 0\n" +
+            "for k, v in pairs(t) do\n" +
+            "  if seen[k] then return false end\n" +
+            "  seen[k] = true n = n + 1\n" +
+            "  t[k] = nil t['k' .. (v + 1)] = nil\n" +
+            "end\n" +
+            "for i = 1, 1000 do t[{}] = i end\n" +
+            "for k in pairs(t) do t[k] = nil end\n" +
+            "return n >= 500, next(t) == nil"
+        );
+        assertEquals( true, result.arg( 1 ).toboolean() );
+        assertEquals( true, result.arg( 2 ).toboolean() );
+    }
+
+    @Test
+    public void testClearWeakKeysDuringTraversal()
+    {
+        Varargs result = run(
+            "local t = setmetatable({}, {__mode = 'k'})\n" +
+            "local keep = {}\n" +
+            "for i = 1, 200 do keep[i] = {} t[keep[i]] = i end\n" +
+            "local n = 0\n" +
+            "for k in pairs(t) do t[k] = nil n = n + 1 end\n" +
+            "return n, next(t) == nil"
+        );
+        assertEquals( 200, result.arg( 1 ).toint() );
+        assertEquals( true, result.arg( 2 ).toboolean() );
+    }
+}
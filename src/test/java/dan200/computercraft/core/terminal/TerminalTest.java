@@ -0,0 +1,149 @@
+/*
+ * This file is part of ComputerCraft - http://www.computercraft.info
+ * Copyright Daniel Ratcliffe, 2011-2017. Do not distribute without permission.
+ * Send enquiries to dratcliffe@gmail.com
+ */
+
+package dan200.computercraft.core.terminal;
+
+import dan200.computercraft.shared.util.Palette;
+import io.netty.buffer.Unpooled;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.network.PacketBuffer;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the changes written by {@link Terminal#writeChanges(PacketBuffer)} bring another terminal up to date,
+ * as the client's copy of a computer's terminal is kept in sync this way.
+ */
+public class TerminalTest
+{
+    private static PacketBuffer writeChanges( Terminal terminal )
+    {
+        PacketBuffer buffer = new PacketBuffer( Unpooled.buffer() );
+        terminal.writeChanges( buffer );
+        return buffer;
+    }
+
+    private static void assertTerminalsEqual( Terminal expected, Terminal actual )
+    {
+        assertEquals( expected.getWidth(), actual.getWidth() );
+        assertEquals( expected.getHeight(), actual.getHeight() );
+        assertEquals( expected.getCursorX(), actual.getCursorX() );
+        assertEquals( expected.getCursorY(), actual.getCursorY() );
+        assertEquals( expected.getCursorBlink(), actual.getCursorBlink() );
+        assertEquals( expected.getTextColour(), actual.getTextColour() );
+        assertEquals( expected.getBackgroundColour(), actual.getBackgroundColour() );
+        assertEquals( expected.getFontName(), actual.getFontName() );
+        for( int y = 0; y < expected.getHeight(); ++y )
+        {
+            assertEquals( "Line " + y, expected.getLine( y ).toString(), actual.getLine( y ).toString() );
+            assertArrayEquals( "Colours of line " + y, expected.getColourLine( y ).toByteArray(), actual.getColourLine( y ).toByteArray() );
+        }
+        for( int i = 0; i < 16; ++i )
+        {
+            assertEquals( "Palette entry " + i, Palette.encodeRGB8( expected.getPalette().getColour( i ) ), Palette.encodeRGB8( actual.getPalette().getColour( i ) ) );
+        }
+    }
+
+    @Test
+    public void testRoundTrip()
+    {
+        Terminal server = new Terminal( 15, 5 );
+        Terminal client = new Terminal( 15, 5 );
+
+        server.setTextColour( 4 );
+        server.setBackgroundColour( 11 );
+        server.setCursorPos( 2, 1 );
+        server.write( "Hello, world" );
+        server.setCursorPos( 0, 3 );
+        server.blit( "\u00e9mixed", "012345", "fedcba" );
+        server.setCursorBlink( true );
+        server.getPalette().setColour( 2, 0.25, 0.5, 0.75 );
+        server.setFontName( "TEST" );
+
+        assertTrue( client.readChanges( writeChanges( server ) ) );
+        assertTerminalsEqual( server, client );
+
+        // Only the last line and the cursor have changed since, so only they are sent
+        server.setCursorPos( 0, 4 );
+        server.setTextColour( 1 );
+        server.write( "12:00" );
+        server.setCursorBlink( false );
+
+        assertTrue( client.readChanges( writeChanges( server ) ) );
+        assertTerminalsEqual( server, client );
+
+        // Scrolling changes every line, and resetting a colour brings back the default entry
+        server.scroll( 2 );
+        server.getPalette().resetColour( 2 );
+
+        assertTrue( client.readChanges( writeChanges( server ) ) );
+        assertTerminalsEqual( server, client );
+    }
+
+    @Test
+    public void testResize()
+    {
+        Terminal server = new Terminal( 15, 5 );
+        Terminal client = new Terminal( 15, 5 );
+        server.write( "Before" );
+        assertTrue( client.readChanges( writeChanges( server ) ) );
+
+        // Changes to a terminal of another size can't be applied, so the client needs a full snapshot
+        server.resize( 20, 8 );
+        server.setCursorPos( 0, 7 );
+        server.write( "After" );
+        assertFalse( client.readChanges( writeChanges( server ) ) );
+
+        client.resize( server.getWidth(), server.getHeight() );
+        client.readFromNBT( server.writeToNBT( new NBTTagCompound() ) );
+        assertTerminalsEqual( server, client );
+
+        // Later changes apply on top of the snapshot
+        server.setCursorPos( 10, 2 );
+        server.write( "Again" );
+        assertTrue( client.readChanges( writeChanges( server ) ) );
+        assertTerminalsEqual( server, client );
+    }
+
+    private static PacketBuffer writeLine( Terminal terminal, int y, int run )
+    {
+        PacketBuffer buffer = new PacketBuffer( Unpooled.buffer() );
+        buffer.writeVarInt( terminal.getWidth() );
+        buffer.writeVarInt( terminal.getHeight() );
+        buffer.writeInt( 0 );
+        buffer.writeInt( 0 );
+        buffer.writeBoolean( false );
+        buffer.writeByte( 0 );
+        buffer.writeByte( 15 );
+        buffer.writeByte( 0 );
+        buffer.writeBoolean( false );
+        buffer.writeVarInt( 1 );
+        buffer.writeVarInt( y );
+        for( int x = 0; x < terminal.getWidth(); ++x )
+        {
+            buffer.writeVarInt( 'a' );
+        }
+        buffer.writeVarInt( run );
+        buffer.writeByte( ColourBuffer.pack( 0, 15 ) );
+        return buffer;
+    }
+
+    @Test
+    public void testMalformed()
+    {
+        Terminal client = new Terminal( 15, 5 );
+        assertTrue( client.readChanges( writeLine( client, 4, 15 ) ) );
+
+        assertFalse( client.readChanges( writeLine( client, 5, 15 ) ) );
+        assertFalse( client.readChanges( writeLine( client, -1, 15 ) ) );
+        assertFalse( client.readChanges( writeLine( client, 0, 16 ) ) );
+        assertFalse( client.readChanges( writeLine( client, 0, 0 ) ) );
+    }
+}